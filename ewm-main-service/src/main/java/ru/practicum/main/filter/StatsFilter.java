@@ -11,17 +11,18 @@ import org.springframework.core.annotation.Order;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
-import ru.practicum.stats.client.StatsClient;
+import ru.practicum.stats.client.HitDispatcher;
+import ru.practicum.stats.util.IpAddresses;
 
 @Component
 @Order(1)
 public class StatsFilter extends OncePerRequestFilter {
 	private static final String APP_NAME = "ewm-main-service";
-	private final StatsClient statsClient;
+	private final HitDispatcher hitDispatcher;
 
 	@Autowired
-	public StatsFilter(StatsClient statsClient) {
-		this.statsClient = statsClient;
+	public StatsFilter(HitDispatcher hitDispatcher) {
+		this.hitDispatcher = hitDispatcher;
 	}
 
 	@Override
@@ -29,19 +30,21 @@ public class StatsFilter extends OncePerRequestFilter {
 	                                @NonNull HttpServletResponse response,
 	                                @NonNull FilterChain filterChain)
 			throws ServletException, IOException {
-		if (shouldTrack(request)) {
-			String uri = request.getRequestURI();
-			String ip = getClientIp(request);
-			LocalDateTime timestamp = LocalDateTime.now();
-
-			try {
-				statsClient.sendHit(APP_NAME, uri, ip, timestamp);
-			} catch (Exception e) {
-				logger.error("Failed to send statistics", e);
+		if (!shouldTrack(request)) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		String uri = request.getRequestURI();
+		String ip = getClientIp(request);
+		LocalDateTime timestamp = LocalDateTime.now();
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			// Only queued here, so the hit is recorded after the response without delaying it.
+			if (!hitDispatcher.offer(APP_NAME, uri, ip, timestamp)) {
+				logger.warn("Stats hit queue is full, hit on " + uri + " rejected");
 			}
 		}
-
-		filterChain.doFilter(request, response);
 	}
 
 	private boolean shouldTrack(HttpServletRequest request) {
@@ -57,14 +60,45 @@ public class StatsFilter extends OncePerRequestFilter {
 	private String getClientIp(HttpServletRequest request) {
 		String xForwardedFor = request.getHeader("X-Forwarded-For");
 		if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-			return xForwardedFor.split(",")[0].trim();
+			String ip = normalizeIp(xForwardedFor.split(",")[0]);
+			if (ip != null) {
+				return ip;
+			}
 		}
 
 		String xRealIp = request.getHeader("X-Real-IP");
 		if (xRealIp != null && !xRealIp.isEmpty()) {
-			return xRealIp;
+			String ip = normalizeIp(xRealIp);
+			if (ip != null) {
+				return ip;
+			}
 		}
 
-		return request.getRemoteAddr();
+		String remoteAddr = request.getRemoteAddr();
+		String ip = normalizeIp(remoteAddr);
+		return ip != null ? ip : remoteAddr;
+	}
+
+	/**
+	 * Canonical form of an address as proxies write it, brackets and port included, or null if the
+	 * value is not an IP address, such as "unknown".
+	 */
+	private static String normalizeIp(String value) {
+		String ip = value.trim();
+		if (ip.startsWith("[")) {
+			int end = ip.indexOf(']');
+			if (end < 0) {
+				return null;
+			}
+			ip = ip.substring(1, end);
+		} else if (ip.indexOf(':') >= 0 && ip.indexOf(':') == ip.lastIndexOf(':')) {
+			// A single colon can only separate an IPv4 address from its port.
+			ip = ip.substring(0, ip.indexOf(':'));
+		}
+		try {
+			return IpAddresses.normalize(ip);
+		} catch (IllegalArgumentException ex) {
+			return null;
+		}
 	}
 }
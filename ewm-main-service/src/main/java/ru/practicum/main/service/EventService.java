@@ -21,14 +21,13 @@ import ru.practicum.main.model.User;
 import ru.practicum.main.repository.EventRepository;
 import ru.practicum.main.repository.ParticipationRequestRepository;
 import ru.practicum.main.util.DateUtil;
-import ru.practicum.stats.client.StatsClient;
-import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.client.ViewsClient;
 
 import jakarta.persistence.criteria.Expression;
 import jakarta.persistence.criteria.Subquery;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
-import java.util.Arrays;
+import java.time.temporal.ChronoUnit;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
@@ -42,15 +41,15 @@ public class EventService {
     private final UserService userService;
     private final CategoryService categoryService;
     private final ParticipationRequestRepository participationRequestRepository;
-    private final StatsClient statsClient;
+    private final ViewsClient viewsClient;
 
-    public EventService(EventRepository eventRepository, EventMapper eventMapper, UserService userService, CategoryService categoryService, ParticipationRequestRepository participationRequestRepository, StatsClient statsClient) {
+    public EventService(EventRepository eventRepository, EventMapper eventMapper, UserService userService, CategoryService categoryService, ParticipationRequestRepository participationRequestRepository, ViewsClient viewsClient) {
         this.eventRepository = eventRepository;
         this.eventMapper = eventMapper;
         this.userService = userService;
         this.categoryService = categoryService;
         this.participationRequestRepository = participationRequestRepository;
-        this.statsClient = statsClient;
+        this.viewsClient = viewsClient;
     }
 
     public List<EventShortDto> getUserEvents(Long userId, Integer from, Integer size) {
@@ -387,20 +386,10 @@ public class EventService {
         }
 
         List<String> uris = events.stream().map(event -> "/events/" + event.getId()).collect(Collectors.toList());
-
-        try {
-            LocalDateTime statsStart = start != null ? start : LocalDateTime.now().minusYears(1);
-            LocalDateTime statsEnd = end != null ? end : LocalDateTime.now().plusYears(1);
-
-            ViewStatsDto[] stats = statsClient.getStats(statsStart, statsEnd, uris, true).getBody();
-            if (stats == null) {
-                return Map.of();
-            }
-
-            return Arrays.stream(stats).collect(Collectors.toMap(ViewStatsDto::getUri, ViewStatsDto::getHits, (hits1, hits2) -> hits1 + hits2));
-        } catch (Exception e) {
-            return Map.of();
-        }
+        LocalDateTime now = statsNow();
+        LocalDateTime statsStart = start != null ? start : now.minusYears(1);
+        LocalDateTime statsEnd = end != null ? end : now.plusYears(1);
+        return viewsClient.getViews(statsStart, statsEnd, uris, true);
     }
 
     private Map<Long, Long> getConfirmedRequestsMap(List<Event> events) {
@@ -420,18 +409,17 @@ public class EventService {
     }
 
     private Long getViewsForEvent(Long eventId) {
-        try {
-            String uri = "/events/" + eventId;
-            LocalDateTime start = LocalDateTime.now().minusYears(1);
-            LocalDateTime end = LocalDateTime.now().plusYears(1);
-            ViewStatsDto[] stats = statsClient.getStats(start, end, List.of(uri), true).getBody();
-            if (stats != null && stats.length > 0) {
-                return stats[0].getHits();
-            }
-            return 0L;
-        } catch (Exception e) {
-            return 0L;
-        }
+        String uri = "/events/" + eventId;
+        LocalDateTime now = statsNow();
+        return viewsClient.getViews(now.minusYears(1), now.plusYears(1), List.of(uri), true).get(uri);
+    }
+
+    /**
+     * Views are counted over a year around this moment. It moves once a minute, so that concurrent and
+     * repeated lookups ask for the same range and can share cached answers.
+     */
+    private static LocalDateTime statsNow() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
     }
 
     private List<EventState> parseEventStates(List<String> states) {
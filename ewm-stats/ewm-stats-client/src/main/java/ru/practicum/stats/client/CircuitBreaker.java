@@ -0,0 +1,115 @@
+package ru.practicum.stats.client;
+
+import java.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Count-based circuit breaker. The outcomes of the last {@code windowSize} calls are kept, a call
+ * counting as bad when it failed or took at least {@code slowCall}. Once {@code minimumCalls} are
+ * recorded and the share of bad ones reaches {@code failureRate}, the breaker opens and refuses calls
+ * for {@code openDuration}. It then lets a single probe through: a good probe closes it, a bad one
+ * opens it again.
+ */
+public class CircuitBreaker {
+	private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private final String name;
+	private final boolean[] bad;
+	private final int minimumCalls;
+	private final double failureRate;
+	private final long slowCallNanos;
+	private final long openNanos;
+	// Guarded by this.
+	private State state = State.CLOSED;
+	private int recorded;
+	private int next;
+	private int badCount;
+	private long openedAt;
+	private boolean probing;
+
+	public CircuitBreaker(String name,
+	                      int windowSize,
+	                      int minimumCalls,
+	                      double failureRate,
+	                      Duration slowCall,
+	                      Duration openDuration) {
+		this.name = name;
+		this.bad = new boolean[windowSize];
+		this.minimumCalls = Math.min(minimumCalls, windowSize);
+		this.failureRate = failureRate;
+		this.slowCallNanos = slowCall.toNanos();
+		this.openNanos = openDuration.toNanos();
+	}
+
+	/**
+	 * Returns whether a call may go ahead; every permitted call must be followed by {@link #record}.
+	 */
+	public synchronized boolean tryAcquire() {
+		switch (state) {
+			case CLOSED:
+				return true;
+			case OPEN:
+				if (System.nanoTime() - openedAt < openNanos) {
+					return false;
+				}
+				state = State.HALF_OPEN;
+				probing = true;
+				return true;
+			default:
+				if (probing) {
+					return false;
+				}
+				probing = true;
+				return true;
+		}
+	}
+
+	public synchronized void record(long elapsedNanos, boolean failed) {
+		boolean badCall = failed || elapsedNanos >= slowCallNanos;
+		if (state == State.HALF_OPEN) {
+			probing = false;
+			if (badCall) {
+				open();
+			} else {
+				state = State.CLOSED;
+				log.info("Circuit breaker {} closed", name);
+			}
+			return;
+		}
+		if (state == State.OPEN) {
+			// A call that started before the breaker opened.
+			return;
+		}
+		if (recorded == bad.length) {
+			badCount -= bad[next] ? 1 : 0;
+		} else {
+			recorded++;
+		}
+		bad[next] = badCall;
+		badCount += badCall ? 1 : 0;
+		next = (next + 1) % bad.length;
+		if (recorded >= minimumCalls && badCount >= failureRate * recorded) {
+			log.warn("Circuit breaker {} opened after {} of the last {} calls failed or were slow", name, badCount, recorded);
+			open();
+		}
+	}
+
+	public synchronized State state() {
+		return state;
+	}
+
+	private void open() {
+		state = State.OPEN;
+		openedAt = System.nanoTime();
+		recorded = 0;
+		next = 0;
+		badCount = 0;
+	}
+}
@@ -0,0 +1,178 @@
+package ru.practicum.stats.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.util.OverflowPolicy;
+
+/**
+ * Takes hits off the request path: callers only enqueue, and one sender thread hands the queued hits
+ * on in batches once {@code batch-size} hits are waiting or {@code flush-interval} has passed. Batches
+ * go to the {@link HitSpool} when it is enabled, otherwise straight to /hit/batch, in which case a
+ * batch that fails to send is lost.
+ */
+@Component
+public class HitDispatcher implements SmartLifecycle {
+	private static final Logger log = LoggerFactory.getLogger(HitDispatcher.class);
+	private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private final StatsClient client;
+	private final ObjectProvider<HitSpool> spool;
+	private final BlockingQueue<EndpointHitDto> queue;
+	private final int batchSize;
+	private final long flushIntervalNanos;
+	private final OverflowPolicy overflowPolicy;
+	private final Timer flushTimer;
+	private final Counter sentCounter;
+	private final Counter droppedCounter;
+	private final Counter rejectedCounter;
+	private final Counter failedCounter;
+	private volatile boolean running;
+	private volatile Thread sender;
+
+	public HitDispatcher(StatsClient client,
+	                     ObjectProvider<HitSpool> spool,
+	                     MeterRegistry meterRegistry,
+	                     @Value("${stats.dispatch.capacity:10000}") int capacity,
+	                     @Value("${stats.dispatch.batch-size:500}") int batchSize,
+	                     @Value("${stats.dispatch.flush-interval:200ms}") Duration flushInterval,
+	                     @Value("${stats.dispatch.overflow:DROP}") OverflowPolicy overflowPolicy) {
+		this.client = client;
+		this.spool = spool;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.batchSize = batchSize;
+		this.flushIntervalNanos = flushInterval.toNanos();
+		this.overflowPolicy = overflowPolicy;
+		Gauge.builder("stats.client.dispatch.depth", queue, BlockingQueue::size).register(meterRegistry);
+		this.flushTimer = Timer.builder("stats.client.dispatch.flush").register(meterRegistry);
+		this.sentCounter = Counter.builder("stats.client.dispatch.sent").register(meterRegistry);
+		this.droppedCounter = Counter.builder("stats.client.dispatch.dropped").register(meterRegistry);
+		this.rejectedCounter = Counter.builder("stats.client.dispatch.rejected").register(meterRegistry);
+		this.failedCounter = Counter.builder("stats.client.dispatch.failed").register(meterRegistry);
+	}
+
+	/**
+	 * Returns false only when the queue is full and the overflow policy is REJECT.
+	 */
+	public boolean offer(String app, String uri, String ip, LocalDateTime timestamp) {
+		EndpointHitDto hit = new EndpointHitDto();
+		hit.setApp(app);
+		hit.setUri(uri);
+		hit.setIp(ip);
+		hit.setTimestamp(timestamp);
+		if (!queue.offer(hit)) {
+			switch (overflowPolicy) {
+				case DROP:
+					droppedCounter.increment();
+					return true;
+				case REJECT:
+					rejectedCounter.increment();
+					return false;
+				default:
+					while (!queue.offer(hit)) {
+						LockSupport.unpark(sender);
+						LockSupport.parkNanos(BLOCK_PARK_NANOS);
+					}
+			}
+		}
+		if (queue.size() >= batchSize) {
+			LockSupport.unpark(sender);
+		}
+		return true;
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		sender = new Thread(this::sendLoop, "stats-hit-dispatcher");
+		sender.start();
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		Thread thread = sender;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public int getPhase() {
+		// The web server stops in phase DEFAULT_PHASE - 2048; stopping in a lower phase, after it, lets hits
+		// recorded by in-flight requests still be sent on shutdown.
+		return SmartLifecycle.DEFAULT_PHASE - 4096;
+	}
+
+	private void sendLoop() {
+		List<EndpointHitDto> batch = new ArrayList<>(batchSize);
+		long lastFlush = System.nanoTime();
+		while (running) {
+			if (queue.size() >= batchSize || System.nanoTime() - lastFlush >= flushIntervalNanos) {
+				queue.drainTo(batch, batchSize);
+				flush(batch);
+				lastFlush = System.nanoTime();
+			} else {
+				LockSupport.parkNanos(this, flushIntervalNanos - (System.nanoTime() - lastFlush));
+			}
+		}
+		while (queue.drainTo(batch, batchSize) > 0) {
+			flush(batch);
+		}
+		log.info("Stats hit dispatcher drained on shutdown");
+	}
+
+	private void flush(List<EndpointHitDto> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		long started = System.nanoTime();
+		int done = 0;
+		try {
+			HitSpool hitSpool = spool.getIfAvailable();
+			if (hitSpool == null) {
+				client.sendHits(batch);
+				sentCounter.increment(batch.size());
+				return;
+			}
+			for (EndpointHitDto hit : batch) {
+				if (hitSpool.append(hit)) {
+					sentCounter.increment();
+				} else {
+					droppedCounter.increment();
+				}
+				done++;
+			}
+		} catch (RuntimeException ex) {
+			failedCounter.increment(batch.size() - done);
+			log.error("Failed to send {} hits to the stats server", batch.size() - done, ex);
+		} finally {
+			flushTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+			batch.clear();
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package ru.practicum.stats.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.HttpClientErrorException;
+import ru.practicum.stats.dto.EndpointHitDto;
+
+/**
+ * Durable queue between {@link StatsClient#sendHit} and the stats server. Hits are appended as JSON
+ * lines to segment files under {@code dir}, and a shipper thread sends them to /hit/batch in batches
+ * of up to {@code batch-size}, so recording a hit neither waits for the server nor fails while it is
+ * down. The sequence range of a batch is written to the checkpoint before the batch is sent, and the
+ * batch is sent with an idempotency key made of the spool id and that range until the server takes
+ * it, also after a restart, so the server stores it once. Shipped segments are deleted. Without
+ * {@code fsync} the spool survives a crash of the process but not of the machine.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.spool.enabled", havingValue = "true")
+public class HitSpool implements SmartLifecycle {
+	private static final Logger log = LoggerFactory.getLogger(HitSpool.class);
+	private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d+)\\.log");
+	private static final String CHECKPOINT_FILE = "checkpoint";
+	private static final String ID_FILE = "spool-id";
+
+	private final StatsClient client;
+	private final ObjectMapper objectMapper;
+	private final Path directory;
+	private final long segmentBytes;
+	private final long maxBytes;
+	private final int batchSize;
+	private final long flushIntervalNanos;
+	private final long maxRetryNanos;
+	private final boolean fsync;
+	// Segment files by the sequence number of their first hit; guarded by this, like the fields up to appended.
+	private final TreeMap<Long, Path> segments = new TreeMap<>();
+	private FileChannel active;
+	private long activeBytes;
+	private long totalBytes;
+	// Sequence number of the next hit; every hit before it has been written completely.
+	private volatile long appended;
+	// Owned by the shipper thread once it has started.
+	private String spoolId;
+	private long shipped;
+	private long pendingEnd;
+	private List<EndpointHitDto> pending;
+	private Cursor cursor;
+	private volatile boolean running;
+	private volatile Thread shipper;
+
+	public HitSpool(StatsClient client,
+	                ObjectMapper objectMapper,
+	                @Value("${stats.spool.dir:./data/stats-spool}") Path directory,
+	                @Value("${stats.spool.segment-size:16MB}") DataSize segmentSize,
+	                @Value("${stats.spool.max-size:1GB}") DataSize maxSize,
+	                @Value("${stats.spool.batch-size:500}") int batchSize,
+	                @Value("${stats.spool.flush-interval:200ms}") Duration flushInterval,
+	                @Value("${stats.spool.max-retry-interval:30s}") Duration maxRetryInterval,
+	                @Value("${stats.spool.fsync:false}") boolean fsync) {
+		this.client = client;
+		this.objectMapper = objectMapper;
+		this.directory = directory;
+		this.segmentBytes = segmentSize.toBytes();
+		this.maxBytes = maxSize.toBytes();
+		this.batchSize = batchSize;
+		this.flushIntervalNanos = flushInterval.toNanos();
+		this.maxRetryNanos = maxRetryInterval.toNanos();
+		this.fsync = fsync;
+	}
+
+	@PostConstruct
+	public void open() throws IOException {
+		Files.createDirectories(directory);
+		Path idFile = directory.resolve(ID_FILE);
+		if (!Files.exists(idFile)) {
+			Files.writeString(idFile, UUID.randomUUID().toString());
+		}
+		spoolId = Files.readString(idFile).trim();
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Matcher segment = SEGMENT_FILE.matcher(file.getFileName().toString());
+				if (segment.matches()) {
+					segments.put(Long.parseLong(segment.group(1)), file);
+				}
+			}
+		}
+		readCheckpoint();
+		if (segments.isEmpty()) {
+			segments.put(shipped, Files.createFile(segmentFile(shipped)));
+			appended = shipped;
+		} else {
+			Map.Entry<Long, Path> last = segments.lastEntry();
+			appended = last.getKey() + recover(last.getValue());
+		}
+		shipped = Math.max(Math.min(shipped, appended), segments.firstKey());
+		pendingEnd = Math.min(Math.max(pendingEnd, shipped), appended);
+		for (Path file : segments.values()) {
+			totalBytes += Files.size(file);
+		}
+		active = FileChannel.open(segments.lastEntry().getValue(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		activeBytes = active.size();
+		deleteShipped();
+		cursor = new Cursor(shipped);
+		if (pendingEnd > shipped) {
+			pending = cursor.read((int) (pendingEnd - shipped));
+		}
+		log.info("Opened stats spool in {} with {} hits to ship", directory, appended - shipped);
+	}
+
+	@PreDestroy
+	public synchronized void close() throws IOException {
+		active.close();
+		cursor.close();
+	}
+
+	/**
+	 * Returns false without appending when the spool has reached {@code max-size}.
+	 *
+	 * @throws UncheckedIOException if the hit cannot be written
+	 */
+	public boolean append(EndpointHitDto hit) {
+		try {
+			byte[] json = objectMapper.writeValueAsBytes(hit);
+			ByteBuffer line = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n').flip();
+			synchronized (this) {
+				long next = appended + 1;
+				if (totalBytes + line.remaining() > maxBytes) {
+					return false;
+				}
+				if (activeBytes >= segmentBytes) {
+					roll();
+				}
+				int length = line.remaining();
+				while (line.hasRemaining()) {
+					active.write(line);
+				}
+				if (fsync) {
+					active.force(false);
+				}
+				activeBytes += length;
+				totalBytes += length;
+				appended = next;
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		if (appended - cursor.seq >= batchSize) {
+			LockSupport.unpark(shipper);
+		}
+		return true;
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		shipper = new Thread(this::shipLoop, "stats-spool-shipper");
+		shipper.setDaemon(true);
+		shipper.start();
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		Thread thread = shipper;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	private void shipLoop() {
+		long lastShipped = System.nanoTime();
+		long retryNanos = 0;
+		while (running) {
+			try {
+				if (pending == null) {
+					long backlog = appended - cursor.seq;
+					long waited = System.nanoTime() - lastShipped;
+					if (backlog == 0 || backlog < batchSize && waited < flushIntervalNanos) {
+						LockSupport.parkNanos(this, backlog == 0 ? flushIntervalNanos : flushIntervalNanos - waited);
+						continue;
+					}
+					pending = cursor.read(batchSize);
+					pendingEnd = cursor.seq;
+					writeCheckpoint();
+				}
+				send();
+				lastShipped = System.nanoTime();
+				retryNanos = 0;
+			} catch (IOException | RuntimeException ex) {
+				retryNanos = retryNanos == 0 ? flushIntervalNanos : Math.min(retryNanos * 2, maxRetryNanos);
+				log.warn("Failed to ship spooled hits {} to {}, retrying in {} ms: {}",
+						shipped, pendingEnd, retryNanos / 1_000_000, ex.toString());
+				LockSupport.parkNanos(this, retryNanos);
+			}
+		}
+	}
+
+	private void send() throws IOException {
+		try {
+			if (!pending.isEmpty()) {
+				client.sendHits(pending, spoolId + "-" + shipped + "-" + pendingEnd);
+			}
+		} catch (HttpClientErrorException ex) {
+			if (ex.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS) || ex.getStatusCode().isSameCodeAs(HttpStatus.REQUEST_TIMEOUT)) {
+				throw ex;
+			}
+			// Sending the same batch again would be refused again.
+			log.error("Stats server refused spooled hits {} to {}, dropping them", shipped, pendingEnd, ex);
+		}
+		shipped = pendingEnd;
+		pending = null;
+		writeCheckpoint();
+		deleteShipped();
+	}
+
+	private void readCheckpoint() throws IOException {
+		Path file = directory.resolve(CHECKPOINT_FILE);
+		if (Files.exists(file)) {
+			String[] fields = Files.readString(file).trim().split(" ");
+			shipped = Long.parseLong(fields[0]);
+			pendingEnd = Long.parseLong(fields[1]);
+		}
+	}
+
+	private void writeCheckpoint() throws IOException {
+		Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+		Files.writeString(tmp, shipped + " " + pendingEnd);
+		Files.move(tmp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Cuts off a line left incomplete by a crash and returns the number of complete lines.
+	 */
+	private static long recover(Path file) throws IOException {
+		long lines = 0;
+		long end = 0;
+		long offset = 0;
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = Files.newInputStream(file)) {
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+				for (int i = 0; i < read; i++) {
+					if (buffer[i] == '\n') {
+						lines++;
+						end = offset + i + 1;
+					}
+				}
+				offset += read;
+			}
+		}
+		if (end < offset) {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.truncate(end);
+			}
+			log.warn("Dropped an incomplete spooled hit at the end of {}", file);
+		}
+		return lines;
+	}
+
+	private synchronized void roll() throws IOException {
+		active.close();
+		Path file = segmentFile(appended);
+		active = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		segments.put(appended, file);
+		activeBytes = 0;
+	}
+
+	private synchronized void deleteShipped() throws IOException {
+		while (segments.size() > 1 && segments.higherKey(segments.firstKey()) <= shipped) {
+			Path file = segments.pollFirstEntry().getValue();
+			totalBytes -= Files.size(file);
+			Files.delete(file);
+		}
+	}
+
+	private synchronized Map.Entry<Long, Path> segmentOf(long seq) {
+		return segments.floorEntry(seq);
+	}
+
+	private Path segmentFile(long first) {
+		return directory.resolve(String.format("segment-%020d.log", first));
+	}
+
+	/**
+	 * Reads the spooled hits in order, moving to the next segment at the end of each one.
+	 */
+	private class Cursor {
+		private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).flip();
+		private FileChannel channel;
+		private volatile long seq;
+
+		Cursor(long seq) throws IOException {
+			this.seq = segmentOf(seq).getKey();
+			for (long next = this.seq; next < seq; ) {
+				nextLine();
+				this.seq = ++next;
+			}
+		}
+
+		/**
+		 * Reads up to {@code max} hits; unreadable lines are skipped but still move the cursor on.
+		 */
+		List<EndpointHitDto> read(int max) throws IOException {
+			List<EndpointHitDto> hits = new ArrayList<>();
+			// Only the shipper moves the cursor, the volatile seq just publishes it.
+			long next = seq;
+			long end = Math.min(appended, next + max);
+			while (next < end) {
+				byte[] line = nextLine();
+				try {
+					hits.add(objectMapper.readValue(line, EndpointHitDto.class));
+				} catch (JsonProcessingException ex) {
+					log.warn("Skipping unreadable spooled hit {}: {}", next, new String(line, StandardCharsets.UTF_8));
+				}
+				seq = ++next;
+			}
+			return hits;
+		}
+
+		private byte[] nextLine() throws IOException {
+			if (channel == null) {
+				channel = FileChannel.open(segmentOf(seq).getValue(), StandardOpenOption.READ);
+			}
+			while (true) {
+				for (int i = buffer.position(); i < buffer.limit(); i++) {
+					if (buffer.get(i) == '\n') {
+						byte[] line = new byte[i - buffer.position()];
+						buffer.get(line).get();
+						return line;
+					}
+				}
+				if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+					buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer).flip();
+				}
+				buffer.compact();
+				int read = channel.read(buffer);
+				buffer.flip();
+				if (read < 0) {
+					// The segment is complete once a later one exists, so its end means the next segment starts here.
+					Map.Entry<Long, Path> next = segmentOf(seq);
+					if (buffer.hasRemaining() || next.getKey() != seq) {
+						throw new EOFException("Spooled hit " + seq + " is missing from " + directory);
+					}
+					channel.close();
+					channel = FileChannel.open(next.getValue(), StandardOpenOption.READ);
+				}
+			}
+		}
+
+		void close() throws IOException {
+			if (channel != null) {
+				channel.close();
+			}
+		}
+	}
+}
@@ -3,6 +3,7 @@ package ru.practicum.stats.client;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -13,29 +14,78 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.LiveStatsDto;
+import ru.practicum.stats.dto.StatsHeaders;
+import ru.practicum.stats.dto.StatsMediaTypes;
 import ru.practicum.stats.dto.ViewStatsDto;
 
 @Component
 public class StatsClient {
 	private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-	private final RestTemplate restTemplate = new RestTemplate();
+	private final RestTemplate restTemplate;
 	private final String baseUrl;
+	private final MediaType mediaType;
+	// Looked up on first use, because the spool itself ships through this client.
+	private final ObjectProvider<HitSpool> spool;
 
-	public StatsClient(@Value("${stats.server-url:http://localhost:9090}") String baseUrl) {
+	/**
+	 * @param wireFormat {@code smile} to exchange hits and stats as Jackson Smile, {@code json} for JSON
+	 */
+	public StatsClient(@Value("${stats.server-url:http://localhost:9090}") String baseUrl,
+	                   @Value("${stats.wire-format:smile}") String wireFormat,
+	                   StatsTransport transport,
+	                   ObjectProvider<HitSpool> spool) {
+		this.restTemplate = new RestTemplate(transport.requestFactory());
 		this.baseUrl = baseUrl;
+		this.mediaType = "json".equalsIgnoreCase(wireFormat)
+				? MediaType.APPLICATION_JSON
+				: MediaType.parseMediaType(StatsMediaTypes.SMILE);
+		this.spool = spool;
 	}
 
+	/**
+	 * Appends the hit to the local spool when {@code stats.spool.enabled} is set, otherwise sends it
+	 * to the server right away.
+	 *
+	 * @throws IllegalStateException if the spool is full
+	 */
 	public void sendHit(String app, String uri, String ip, LocalDateTime timestamp) {
 		EndpointHitDto dto = new EndpointHitDto();
 		dto.setApp(app);
 		dto.setUri(uri);
 		dto.setIp(ip);
 		dto.setTimestamp(timestamp);
+		HitSpool hitSpool = spool.getIfAvailable();
+		if (hitSpool != null) {
+			if (!hitSpool.append(dto)) {
+				throw new IllegalStateException("Stats spool is full, hit dropped");
+			}
+			return;
+		}
 		HttpHeaders headers = new HttpHeaders();
-		headers.setContentType(MediaType.APPLICATION_JSON);
+		headers.setContentType(mediaType);
 		restTemplate.exchange(baseUrl + "/hit", HttpMethod.POST, new HttpEntity<>(dto, headers), Void.class);
 	}
 
+	public HitBatchResultDto sendHits(List<EndpointHitDto> hits) {
+		return sendHits(hits, null);
+	}
+
+	/**
+	 * Sends the hits as one batch; the server stores a batch with a key it has seen before only once.
+	 */
+	public HitBatchResultDto sendHits(List<EndpointHitDto> hits, String idempotencyKey) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(mediaType);
+		headers.setAccept(List.of(mediaType));
+		if (idempotencyKey != null) {
+			headers.set(StatsHeaders.IDEMPOTENCY_KEY, idempotencyKey);
+		}
+		return restTemplate.exchange(baseUrl + "/hit/batch", HttpMethod.POST, new HttpEntity<>(hits, headers), HitBatchResultDto.class)
+				.getBody();
+	}
+
 	public ResponseEntity<ViewStatsDto[]> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
 		String startStr = FORMATTER.format(start);
 		String endStr = FORMATTER.format(end);
@@ -48,8 +98,20 @@ public class StatsClient {
 				builder.queryParam("uris", uri);
 			}
 		}
-		return restTemplate.getForEntity(builder.build().encode().toUri(), ViewStatsDto[].class);
+		HttpHeaders headers = new HttpHeaders();
+		headers.setAccept(List.of(mediaType));
+		return restTemplate.exchange(builder.build().encode().toUri(), HttpMethod.GET, new HttpEntity<>(headers), ViewStatsDto[].class);
 	}
-}
-
 
+	/**
+	 * Hits of each uri over the last 1, 5 and 60 minutes, as counted in memory by the stats server node
+	 * that answers.
+	 */
+	public ResponseEntity<LiveStatsDto[]> getLiveStats(List<String> uris) {
+		UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(baseUrl + "/stats/live");
+		for (String uri : uris) {
+			builder.queryParam("uris", uri);
+		}
+		return restTemplate.getForEntity(builder.build().encode().toUri(), LiveStatsDto[].class);
+	}
+}
@@ -0,0 +1,149 @@
+package ru.practicum.stats.client;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * HTTP transport of {@link StatsClient}. The {@code pooled} one keeps up to {@code max-connections}
+ * connections to the stats server open for {@code keep-alive} and decompresses gzip and deflate
+ * responses; its pool is published as the httpcomponents.httpclient.pool.* meters tagged
+ * httpclient=stats. Besides the connect timeout and the read timeout between two packets, every call
+ * is cancelled once it has taken {@code deadline}, so a stalled server cannot hold a caller for long;
+ * the deadline task is removed as soon as the call fails or its response is closed.
+ * The {@code jdk} one goes through the JDK HTTP client, which runs its own tasks on virtual threads
+ * when those are enabled, and applies the deadline up to the response headers only.
+ */
+@Component
+public class StatsTransport {
+	private final ClientHttpRequestFactory requestFactory;
+	private final CloseableHttpClient httpClient;
+	private final ScheduledThreadPoolExecutor deadlines;
+	private final long deadlineNanos;
+
+	public StatsTransport(MeterRegistry meterRegistry,
+	                      @Value("${stats.http.transport:pooled}") String transport,
+	                      @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+	                      @Value("${stats.http.max-connections:50}") int maxConnections,
+	                      @Value("${stats.http.max-connections-per-route:20}") int maxConnectionsPerRoute,
+	                      @Value("${stats.http.keep-alive:30s}") Duration keepAlive,
+	                      @Value("${stats.http.connect-timeout:1s}") Duration connectTimeout,
+	                      @Value("${stats.http.read-timeout:5s}") Duration readTimeout,
+	                      @Value("${stats.http.pool-timeout:1s}") Duration poolTimeout,
+	                      @Value("${stats.http.deadline:10s}") Duration deadline,
+	                      @Value("${stats.http.compression:true}") boolean compression) {
+		this.deadlineNanos = deadline.toNanos();
+		if ("jdk".equalsIgnoreCase(transport)) {
+			HttpClient.Builder builder = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_1_1)
+					.connectTimeout(connectTimeout);
+			if (virtualThreads) {
+				builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+			}
+			JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(builder.build());
+			factory.setReadTimeout(deadline);
+			this.requestFactory = factory;
+			this.httpClient = null;
+			this.deadlines = null;
+			return;
+		}
+		PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+				.setMaxConnTotal(maxConnections)
+				.setMaxConnPerRoute(maxConnectionsPerRoute)
+				.setDefaultConnectionConfig(ConnectionConfig.custom()
+						.setConnectTimeout(Timeout.of(connectTimeout))
+						.setSocketTimeout(Timeout.of(readTimeout))
+						.build())
+				.build();
+		this.deadlines = new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().name("stats-http-deadline").daemon().factory());
+		deadlines.setRemoveOnCancelPolicy(true);
+		HttpClientBuilder builder = HttpClientBuilder.create()
+				.addExecInterceptorFirst("deadline", this::executeWithinDeadline)
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectionRequestTimeout(Timeout.of(poolTimeout))
+						.setResponseTimeout(Timeout.of(readTimeout))
+						// Used when the server does not say how long it keeps the connection.
+						.setConnectionKeepAlive(TimeValue.of(keepAlive))
+						.build())
+				.evictExpiredConnections()
+				.evictIdleConnections(TimeValue.of(keepAlive));
+		if (!compression) {
+			builder.disableContentCompression();
+		}
+		this.httpClient = builder.build();
+		new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "stats").bindTo(meterRegistry);
+		this.requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+	}
+
+	public ClientHttpRequestFactory requestFactory() {
+		return requestFactory;
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		if (httpClient != null) {
+			deadlines.shutdownNow();
+			httpClient.close();
+		}
+	}
+
+	private ClassicHttpResponse executeWithinDeadline(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+			throws IOException, HttpException {
+		if (!(scope.originalRequest instanceof HttpUriRequestBase cancellable)) {
+			return chain.proceed(request, scope);
+		}
+		ScheduledFuture<?> timer = deadlines.schedule(cancellable::cancel, deadlineNanos, TimeUnit.NANOSECONDS);
+		ClassicHttpResponse response;
+		try {
+			response = chain.proceed(request, scope);
+		} catch (IOException | HttpException | RuntimeException ex) {
+			timer.cancel(false);
+			throw ex;
+		}
+		HttpEntity entity = response.getEntity();
+		if (entity == null) {
+			timer.cancel(false);
+		} else {
+			// The body is still to be read, so the deadline runs until the response is closed.
+			response.setEntity(new HttpEntityWrapper(entity) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						timer.cancel(false);
+					}
+				}
+			});
+		}
+		return response;
+	}
+}
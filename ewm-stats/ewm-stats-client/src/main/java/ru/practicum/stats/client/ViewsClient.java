@@ -0,0 +1,321 @@
+package ru.practicum.stats.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStatsDto;
+
+/**
+ * View counts per uri that never fail and never wait on a stats server known to be in trouble. Calls to
+ * /stats go through a {@link CircuitBreaker} that also counts slow calls as failures. Every answer is
+ * kept as the last known count of its uris; a failed call, or one refused by the open breaker, is
+ * answered from those counts at once, with 0 for uris never seen. The last known count of a uri is the
+ * one of the latest successful query, whatever its range.
+ *
+ * <p>Successful answers are also cached per uri, range and uniqueness for {@code ttl}. Uris missing
+ * from the cache are looked up together in one call, and a lookup of a uri already being looked up
+ * by another caller waits for that call instead of making its own.
+ *
+ * <p>A lookup is made at once when no /stats call for its range is outstanding. Lookups of a range
+ * made while such a call is, are collected into one batch, made as a single /stats call for all their
+ * uris once that call ends, once {@code batch.window} has passed or once {@code batch.max-uris} uris
+ * are waiting, whichever comes first. The first caller of a batch makes the call and the counts are
+ * handed back to each caller.
+ */
+@Component
+public class ViewsClient {
+	private static final Logger log = LoggerFactory.getLogger(ViewsClient.class);
+
+	private final StatsClient client;
+	private final CircuitBreaker breaker;
+	private final Map<String, Long> lastKnown;
+	private final Map<Key, Entry> cache;
+	private final Map<Key, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>();
+	private final long ttlNanos;
+	// Outstanding calls and the batch collecting behind them, by range; guarded by itself.
+	private final Map<Range, Calls> batches = new HashMap<>();
+	private final long batchWindowNanos;
+	private final int batchMaxUris;
+	private final DistributionSummary batchSizes;
+	private final Counter fallbackCounter;
+	private final Counter hitCounter;
+	private final Counter missCounter;
+	private final Counter coalescedCounter;
+
+	public ViewsClient(StatsClient client,
+	                   MeterRegistry meterRegistry,
+	                   @Value("${stats.views.breaker.window-size:20}") int windowSize,
+	                   @Value("${stats.views.breaker.minimum-calls:10}") int minimumCalls,
+	                   @Value("${stats.views.breaker.failure-rate:0.5}") double failureRate,
+	                   @Value("${stats.views.breaker.slow-call:500ms}") Duration slowCall,
+	                   @Value("${stats.views.breaker.open-duration:10s}") Duration openDuration,
+	                   @Value("${stats.views.last-known.max-size:100000}") int lastKnownSize,
+	                   @Value("${stats.views.cache.ttl:2s}") Duration ttl,
+	                   @Value("${stats.views.cache.max-size:10000}") int cacheSize,
+	                   @Value("${stats.views.batch.window:5ms}") Duration batchWindow,
+	                   @Value("${stats.views.batch.max-uris:200}") int batchMaxUris) {
+		this.client = client;
+		this.breaker = new CircuitBreaker("stats-views", windowSize, minimumCalls, failureRate, slowCall, openDuration);
+		this.lastKnown = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > lastKnownSize;
+			}
+		};
+		this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > cacheSize;
+			}
+		};
+		this.ttlNanos = ttl.toNanos();
+		this.batchWindowNanos = batchWindow.toNanos();
+		this.batchMaxUris = batchMaxUris;
+		Gauge.builder("stats.client.views.breaker.state", breaker, b -> b.state().ordinal()).register(meterRegistry);
+		Gauge.builder("stats.client.views.cache.size", cache, c -> {
+			synchronized (c) {
+				return c.size();
+			}
+		}).register(meterRegistry);
+		this.fallbackCounter = Counter.builder("stats.client.views.fallback").register(meterRegistry);
+		this.hitCounter = Counter.builder("stats.client.views.cache.hits").register(meterRegistry);
+		this.missCounter = Counter.builder("stats.client.views.cache.misses").register(meterRegistry);
+		this.coalescedCounter = Counter.builder("stats.client.views.cache.coalesced").register(meterRegistry);
+		this.batchSizes = DistributionSummary.builder("stats.client.views.batch.uris").register(meterRegistry);
+	}
+
+	/**
+	 * Hits of each of {@code uris} in the range, every uri included.
+	 */
+	public Map<String, Long> getViews(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+		if (uris.isEmpty()) {
+			return Map.of();
+		}
+		Map<String, Long> views = new HashMap<>();
+		List<Key> missing = new ArrayList<>();
+		long now = System.nanoTime();
+		synchronized (cache) {
+			for (String uri : uris) {
+				Key key = new Key(start, end, unique, uri);
+				Entry entry = cache.get(key);
+				if (entry != null && now - entry.expires() < 0) {
+					views.put(uri, entry.hits());
+				} else {
+					missing.add(key);
+				}
+			}
+		}
+		hitCounter.increment(views.size());
+		missCounter.increment(missing.size());
+		if (missing.isEmpty()) {
+			return views;
+		}
+		Map<String, CompletableFuture<Long>> owned = new LinkedHashMap<>();
+		Map<String, CompletableFuture<Long>> pending = new LinkedHashMap<>();
+		for (Key key : missing) {
+			CompletableFuture<Long> future = new CompletableFuture<>();
+			CompletableFuture<Long> running = inFlight.putIfAbsent(key, future);
+			if (running == null) {
+				future.whenComplete((hits, ex) -> inFlight.remove(key, future));
+				owned.put(key.uri(), future);
+				pending.put(key.uri(), future);
+			} else {
+				coalescedCounter.increment();
+				pending.put(key.uri(), running);
+			}
+		}
+		if (!owned.isEmpty()) {
+			submit(new Range(start, end, unique), owned);
+		}
+		try {
+			pending.forEach((uri, future) -> views.put(uri, future.join()));
+		} catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw ex;
+		}
+		return views;
+	}
+
+	/**
+	 * Makes the lookups now, or adds them to the batch of their range; returns once they have been made
+	 * or handed to the caller making the batch.
+	 */
+	private void submit(Range range, Map<String, CompletableFuture<Long>> lookups) {
+		if (batchWindowNanos <= 0) {
+			flush(range, lookups);
+			return;
+		}
+		Batch batch;
+		boolean first = false;
+		synchronized (batches) {
+			Calls calls = batches.computeIfAbsent(range, r -> new Calls());
+			if (calls.outstanding == 0) {
+				calls.outstanding++;
+				batch = null;
+			} else {
+				batch = calls.next;
+				if (batch == null) {
+					batch = new Batch();
+					calls.next = batch;
+					first = true;
+				}
+				batch.lookups.putAll(lookups);
+				if (batch.lookups.size() >= batchMaxUris) {
+					calls.next = null;
+					calls.outstanding++;
+					batch.turn.complete(null);
+				}
+			}
+		}
+		if (batch == null) {
+			send(range, lookups);
+			return;
+		}
+		if (!first) {
+			return;
+		}
+		try {
+			batch.turn.get(batchWindowNanos, TimeUnit.NANOSECONDS);
+		} catch (TimeoutException | ExecutionException ex) {
+			start(range, batch);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			start(range, batch);
+		}
+		send(range, batch.lookups);
+	}
+
+	/**
+	 * Stops the batch collecting lookups, unless another caller already did.
+	 */
+	private void start(Range range, Batch batch) {
+		synchronized (batches) {
+			Calls calls = batches.get(range);
+			if (calls.next == batch) {
+				calls.next = null;
+				calls.outstanding++;
+			}
+		}
+	}
+
+	/**
+	 * Makes an outstanding call, then hands the turn to the batch collected behind it, if any.
+	 */
+	private void send(Range range, Map<String, CompletableFuture<Long>> lookups) {
+		try {
+			flush(range, lookups);
+		} finally {
+			Batch next;
+			synchronized (batches) {
+				Calls calls = batches.get(range);
+				next = calls.next;
+				if (next != null) {
+					calls.next = null;
+				} else if (--calls.outstanding == 0) {
+					batches.remove(range);
+				}
+			}
+			if (next != null) {
+				next.turn.complete(null);
+			}
+		}
+	}
+
+	private void flush(Range range, Map<String, CompletableFuture<Long>> lookups) {
+		batchSizes.record(lookups.size());
+		try {
+			Map<String, Long> loaded = load(range.start(), range.end(), new ArrayList<>(lookups.keySet()), range.unique());
+			lookups.forEach((uri, future) -> future.complete(loaded.get(uri)));
+		} catch (RuntimeException ex) {
+			lookups.values().forEach(future -> future.completeExceptionally(ex));
+		}
+	}
+
+	private Map<String, Long> load(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+		if (breaker.tryAcquire()) {
+			long started = System.nanoTime();
+			boolean failed = true;
+			try {
+				ViewStatsDto[] stats = client.getStats(start, end, uris, unique).getBody();
+				failed = false;
+				return remember(start, end, uris, unique, stats);
+			} catch (RuntimeException ex) {
+				log.warn("Failed to get views of {} uris, answering with the last known ones: {}", uris.size(), ex.toString());
+			} finally {
+				breaker.record(System.nanoTime() - started, failed);
+			}
+		}
+		fallbackCounter.increment();
+		return recall(uris, unique);
+	}
+
+	private Map<String, Long> remember(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique, ViewStatsDto[] stats) {
+		Map<String, Long> views = new HashMap<>();
+		uris.forEach(uri -> views.put(uri, 0L));
+		if (stats != null) {
+			for (ViewStatsDto stat : stats) {
+				views.merge(stat.getUri(), stat.getHits(), Long::sum);
+			}
+		}
+		synchronized (lastKnown) {
+			views.forEach((uri, hits) -> lastKnown.put(key(uri, unique), hits));
+		}
+		long expires = System.nanoTime() + ttlNanos;
+		synchronized (cache) {
+			views.forEach((uri, hits) -> cache.put(new Key(start, end, unique, uri), new Entry(hits, expires)));
+		}
+		return views;
+	}
+
+	private Map<String, Long> recall(List<String> uris, boolean unique) {
+		Map<String, Long> views = new HashMap<>();
+		synchronized (lastKnown) {
+			uris.forEach(uri -> views.put(uri, lastKnown.getOrDefault(key(uri, unique), 0L)));
+		}
+		return views;
+	}
+
+	private static String key(String uri, boolean unique) {
+		return (unique ? "u:" : "a:") + uri;
+	}
+
+	private record Key(LocalDateTime start, LocalDateTime end, boolean unique, String uri) {
+	}
+
+	private record Range(LocalDateTime start, LocalDateTime end, boolean unique) {
+	}
+
+	private record Entry(long hits, long expires) {
+	}
+
+	private static class Calls {
+		private int outstanding;
+		private Batch next;
+	}
+
+	private static class Batch {
+		private final Map<String, CompletableFuture<Long>> lookups = new LinkedHashMap<>();
+		// Completed once the batch may be sent.
+		private final CompletableFuture<Void> turn = new CompletableFuture<>();
+	}
+}
@@ -0,0 +1,220 @@
+package ru.practicum.stats.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+
+class HitSpoolTest {
+	private static final DataSize SEGMENT_SIZE = DataSize.ofBytes(1024);
+	private static final int BATCH_SIZE = 10;
+
+	private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+	private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+	private final List<String> keys = Collections.synchronizedList(new ArrayList<>());
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void shipsAppendedHitsInOrderAndDeletesShippedSegments() throws IOException {
+		HitSpool spool = spool(acceptingClient(), DataSize.ofMegabytes(1));
+		spool.open();
+		for (int i = 0; i < 25; i++) {
+			assertThat(spool.append(hit(i))).isTrue();
+		}
+
+		spool.start();
+		await(() -> sent.size() == 25 && segmentFiles().size() == 1);
+		spool.stop();
+		spool.close();
+
+		assertThat(sent).containsExactlyElementsOf(uris(0, 25));
+		assertThat(keys).hasSize(3);
+		assertThat(keys.get(0)).endsWith("-0-10");
+		assertThat(keys.get(1)).endsWith("-10-20");
+		assertThat(keys.get(2)).endsWith("-20-25");
+	}
+
+	@Test
+	void rollsOverToNewSegmentAtSegmentSize() throws IOException {
+		HitSpool spool = spool(acceptingClient(), DataSize.ofMegabytes(1));
+		spool.open();
+		long maxLine = 0;
+		for (int i = 0; i < 40; i++) {
+			maxLine = Math.max(maxLine, objectMapper.writeValueAsBytes(hit(i)).length + 1);
+			spool.append(hit(i));
+		}
+		spool.close();
+
+		List<Path> segments = segmentFiles();
+		assertThat(segments).hasSizeGreaterThan(2);
+		long first = 0;
+		for (int i = 0; i < segments.size(); i++) {
+			Path segment = segments.get(i);
+			assertThat(segment.getFileName().toString()).isEqualTo(String.format("segment-%020d.log", first));
+			if (i < segments.size() - 1) {
+				assertThat(Files.size(segment)).isGreaterThanOrEqualTo(SEGMENT_SIZE.toBytes())
+						.isLessThan(SEGMENT_SIZE.toBytes() + maxLine);
+			}
+			first += Files.readAllLines(segment).size();
+		}
+		assertThat(first).isEqualTo(40);
+	}
+
+	@Test
+	void resumesFromCheckpointAfterRestartWithSameIdempotencyKey() throws IOException {
+		AtomicInteger calls = new AtomicInteger();
+		StatsClient failing = mock(StatsClient.class);
+		doAnswer(invocation -> {
+			keys.add(invocation.getArgument(1));
+			if (calls.incrementAndGet() > 2) {
+				throw new IllegalStateException("Stats server is down");
+			}
+			record(invocation.getArgument(0));
+			return new HitBatchResultDto(0, 0, false);
+		}).when(failing).sendHits(any(), anyString());
+		HitSpool spool = spool(failing, DataSize.ofMegabytes(1));
+		spool.open();
+		for (int i = 0; i < 25; i++) {
+			spool.append(hit(i));
+		}
+		spool.start();
+		await(() -> calls.get() >= 4);
+		spool.stop();
+		spool.close();
+		String failedKey = keys.get(2);
+		assertThat(keys.subList(2, keys.size())).containsOnly(failedKey);
+		assertThat(sent).containsExactlyElementsOf(uris(0, 20));
+		assertThat(segmentFiles()).hasSize(2);
+
+		sent.clear();
+		keys.clear();
+		HitSpool restarted = spool(acceptingClient(), DataSize.ofMegabytes(1));
+		restarted.open();
+		restarted.append(hit(25));
+		restarted.start();
+		await(() -> sent.size() == 6 && segmentFiles().size() == 1);
+		restarted.stop();
+		restarted.close();
+
+		assertThat(sent).containsExactlyElementsOf(uris(20, 26));
+		assertThat(keys.get(0)).isEqualTo(failedKey);
+		assertThat(keys.get(1)).isEqualTo(failedKey.substring(0, failedKey.indexOf("-20-25")) + "-25-26");
+	}
+
+	@Test
+	void dropsIncompleteLineLeftByCrash() throws IOException {
+		HitSpool spool = spool(acceptingClient(), DataSize.ofMegabytes(1));
+		spool.open();
+		for (int i = 0; i < 3; i++) {
+			spool.append(hit(i));
+		}
+		spool.close();
+		Path segment = segmentFiles().get(0);
+		long complete = Files.size(segment);
+		Files.write(segment, "{\"app\":\"ewm-main".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		HitSpool restarted = spool(acceptingClient(), DataSize.ofMegabytes(1));
+		restarted.open();
+		assertThat(Files.size(segment)).isEqualTo(complete);
+		restarted.append(hit(3));
+		restarted.start();
+		await(() -> sent.size() == 4);
+		restarted.stop();
+		restarted.close();
+
+		assertThat(sent).containsExactlyElementsOf(uris(0, 4));
+	}
+
+	@Test
+	void refusesHitsBeyondMaxSize() throws IOException {
+		long line = objectMapper.writeValueAsBytes(hit(0)).length + 1;
+		HitSpool spool = spool(acceptingClient(), DataSize.ofBytes(3 * line));
+		spool.open();
+
+		assertThat(spool.append(hit(0))).isTrue();
+		assertThat(spool.append(hit(1))).isTrue();
+		assertThat(spool.append(hit(2))).isTrue();
+		assertThat(spool.append(hit(3))).isFalse();
+		spool.close();
+	}
+
+	private HitSpool spool(StatsClient client, DataSize maxSize) {
+		return new HitSpool(client, objectMapper, directory, SEGMENT_SIZE, maxSize, BATCH_SIZE,
+				Duration.ofMillis(20), Duration.ofMillis(50), false);
+	}
+
+	private StatsClient acceptingClient() {
+		StatsClient client = mock(StatsClient.class);
+		doAnswer(invocation -> {
+			keys.add(invocation.getArgument(1));
+			record(invocation.getArgument(0));
+			return new HitBatchResultDto(0, 0, false);
+		}).when(client).sendHits(any(), anyString());
+		return client;
+	}
+
+	private void record(List<EndpointHitDto> hits) {
+		hits.forEach(hit -> sent.add(hit.getUri()));
+	}
+
+	private List<Path> segmentFiles() {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().startsWith("segment-")).sorted().toList();
+		} catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static EndpointHitDto hit(int i) {
+		EndpointHitDto hit = new EndpointHitDto();
+		hit.setApp("ewm-main-service");
+		hit.setUri("/events/" + i);
+		hit.setIp("10.0.0." + i % 256);
+		hit.setTimestamp(LocalDateTime.of(2026, 10, 18, 12, 0));
+		return hit;
+	}
+
+	private static List<String> uris(int from, int to) {
+		List<String> uris = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			uris.add("/events/" + i);
+		}
+		return uris;
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).as("timed out waiting for the spool").isLessThan(deadline);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(ex);
+			}
+		}
+	}
+}
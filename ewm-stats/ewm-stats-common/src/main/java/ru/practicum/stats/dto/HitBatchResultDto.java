@@ -0,0 +1,44 @@
+package ru.practicum.stats.dto;
+
+public class HitBatchResultDto {
+	private long accepted;
+	private long rejected;
+	private boolean duplicate;
+
+	public HitBatchResultDto() {
+	}
+
+	public HitBatchResultDto(long accepted, long rejected) {
+		this(accepted, rejected, false);
+	}
+
+	public HitBatchResultDto(long accepted, long rejected, boolean duplicate) {
+		this.accepted = accepted;
+		this.rejected = rejected;
+		this.duplicate = duplicate;
+	}
+
+	public long getAccepted() {
+		return accepted;
+	}
+
+	public void setAccepted(long accepted) {
+		this.accepted = accepted;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public void setRejected(long rejected) {
+		this.rejected = rejected;
+	}
+
+	public boolean isDuplicate() {
+		return duplicate;
+	}
+
+	public void setDuplicate(boolean duplicate) {
+		this.duplicate = duplicate;
+	}
+}
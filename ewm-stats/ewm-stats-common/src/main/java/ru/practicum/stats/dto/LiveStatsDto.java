@@ -0,0 +1,50 @@
+package ru.practicum.stats.dto;
+
+public class LiveStatsDto {
+	private String uri;
+	private long lastMinute;
+	private long last5Minutes;
+	private long lastHour;
+
+	public LiveStatsDto() {
+	}
+
+	public LiveStatsDto(String uri, long lastMinute, long last5Minutes, long lastHour) {
+		this.uri = uri;
+		this.lastMinute = lastMinute;
+		this.last5Minutes = last5Minutes;
+		this.lastHour = lastHour;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public void setUri(String uri) {
+		this.uri = uri;
+	}
+
+	public long getLastMinute() {
+		return lastMinute;
+	}
+
+	public void setLastMinute(long lastMinute) {
+		this.lastMinute = lastMinute;
+	}
+
+	public long getLast5Minutes() {
+		return last5Minutes;
+	}
+
+	public void setLast5Minutes(long last5Minutes) {
+		this.last5Minutes = last5Minutes;
+	}
+
+	public long getLastHour() {
+		return lastHour;
+	}
+
+	public void setLastHour(long lastHour) {
+		this.lastHour = lastHour;
+	}
+}
@@ -0,0 +1,16 @@
+package ru.practicum.stats.dto;
+
+/**
+ * Request headers understood by the stats server besides the standard ones.
+ */
+public final class StatsHeaders {
+	/**
+	 * Key of a /hit/batch request; a batch sent again with a key the server has stored is not stored
+	 * twice. At most {@link #MAX_IDEMPOTENCY_KEY_LENGTH} characters.
+	 */
+	public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+	public static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
+	private StatsHeaders() {
+	}
+}
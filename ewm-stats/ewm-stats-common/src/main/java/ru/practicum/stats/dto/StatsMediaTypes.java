@@ -0,0 +1,15 @@
+package ru.practicum.stats.dto;
+
+/**
+ * Media types spoken between the stats client and server besides JSON. Both sides encode the DTOs of
+ * this package with Jackson, so every format carries the same fields.
+ */
+public final class StatsMediaTypes {
+	/**
+	 * Jackson Smile, a binary JSON encoding that writes repeated field names as back-references.
+	 */
+	public static final String SMILE = "application/x-jackson-smile";
+
+	private StatsMediaTypes() {
+	}
+}
@@ -0,0 +1,46 @@
+package ru.practicum.stats.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hits of one endpoint per bucket, in bucket order. Buckets without hits are left out.
+ */
+public class TimeSeriesDto {
+	private String app;
+	private String uri;
+	private List<TimeSeriesPointDto> points = new ArrayList<>();
+
+	public TimeSeriesDto() {
+	}
+
+	public TimeSeriesDto(String app, String uri, List<TimeSeriesPointDto> points) {
+		this.app = app;
+		this.uri = uri;
+		this.points = points;
+	}
+
+	public String getApp() {
+		return app;
+	}
+
+	public void setApp(String app) {
+		this.app = app;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public void setUri(String uri) {
+		this.uri = uri;
+	}
+
+	public List<TimeSeriesPointDto> getPoints() {
+		return points;
+	}
+
+	public void setPoints(List<TimeSeriesPointDto> points) {
+		this.points = points;
+	}
+}
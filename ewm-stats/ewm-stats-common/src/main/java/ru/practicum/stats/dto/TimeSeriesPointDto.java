@@ -0,0 +1,34 @@
+package ru.practicum.stats.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import java.time.LocalDateTime;
+
+public class TimeSeriesPointDto {
+	@JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+	private LocalDateTime bucket;
+	private long hits;
+
+	public TimeSeriesPointDto() {
+	}
+
+	public TimeSeriesPointDto(LocalDateTime bucket, long hits) {
+		this.bucket = bucket;
+		this.hits = hits;
+	}
+
+	public LocalDateTime getBucket() {
+		return bucket;
+	}
+
+	public void setBucket(LocalDateTime bucket) {
+		this.bucket = bucket;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public void setHits(long hits) {
+		this.hits = hits;
+	}
+}
@@ -0,0 +1,168 @@
+package ru.practicum.stats.util;
+
+import java.util.Arrays;
+
+/**
+ * Parses IPv4 and IPv6 literals without the DNS lookups {@code InetAddress.getByName} may fall back
+ * to, and formats them canonically: dotted quad for IPv4, IPv4-mapped IPv6 included, and RFC 5952
+ * text for IPv6. Hits are stored and hashed in canonical form, so a client counts once however its
+ * address was written.
+ */
+public final class IpAddresses {
+	private IpAddresses() {
+	}
+
+	public static String normalize(String value) {
+		return format(parse(value));
+	}
+
+	/**
+	 * Returns the 4 or 16 address bytes.
+	 *
+	 * @throws IllegalArgumentException if the value is not an IP address literal
+	 */
+	public static byte[] parse(String value) {
+		byte[] address = value.indexOf(':') < 0 ? parseIpv4(value) : parseIpv6(value);
+		if (address == null) {
+			throw new IllegalArgumentException("Not an IP address: " + value);
+		}
+		return address;
+	}
+
+	public static String format(byte[] address) {
+		if (address.length == 4) {
+			return (address[0] & 0xff) + "." + (address[1] & 0xff) + "." + (address[2] & 0xff) + "." + (address[3] & 0xff);
+		}
+		int[] groups = new int[8];
+		for (int i = 0; i < 8; i++) {
+			groups[i] = (address[2 * i] & 0xff) << 8 | address[2 * i + 1] & 0xff;
+		}
+		// RFC 5952: compress the first longest run of two or more zero groups.
+		int runStart = -1;
+		int runLength = 1;
+		for (int i = 0; i < 8; i++) {
+			int length = 0;
+			while (i + length < 8 && groups[i + length] == 0) {
+				length++;
+			}
+			if (length > runLength) {
+				runStart = i;
+				runLength = length;
+			}
+			i += length;
+		}
+		StringBuilder text = new StringBuilder(39);
+		for (int i = 0; i < 8; i++) {
+			if (i == runStart) {
+				text.append("::");
+				i += runLength - 1;
+				continue;
+			}
+			if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+				text.append(':');
+			}
+			text.append(Integer.toHexString(groups[i]));
+		}
+		return text.toString();
+	}
+
+	private static byte[] parseIpv4(String value) {
+		byte[] address = new byte[4];
+		int part = 0;
+		int octet = -1;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c >= '0' && c <= '9') {
+				octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+				if (octet > 255) {
+					return null;
+				}
+			} else if (c == '.' && octet >= 0 && part < 3) {
+				address[part++] = (byte) octet;
+				octet = -1;
+			} else {
+				return null;
+			}
+		}
+		if (part != 3 || octet < 0) {
+			return null;
+		}
+		address[3] = (byte) octet;
+		return address;
+	}
+
+	private static byte[] parseIpv6(String value) {
+		String text = value;
+		int zone = text.indexOf('%');
+		if (zone >= 0) {
+			text = text.substring(0, zone);
+		}
+		byte[] tail = null;
+		int lastColon = text.lastIndexOf(':');
+		if (text.indexOf('.', lastColon) >= 0) {
+			tail = parseIpv4(text.substring(lastColon + 1));
+			if (tail == null || lastColon == 0) {
+				return null;
+			}
+			// Keep both colons of a "::" right before the IPv4 part, as in "::ffff:1.2.3.4" vs "::1.2.3.4".
+			text = text.substring(0, text.charAt(lastColon - 1) == ':' ? lastColon + 1 : lastColon);
+		}
+		int gap = text.indexOf("::");
+		if (gap >= 0 && text.indexOf("::", gap + 1) >= 0) {
+			return null;
+		}
+		int[] head = gap < 0 ? parseGroups(text) : parseGroups(text.substring(0, gap));
+		int[] rest = gap < 0 ? new int[0] : parseGroups(text.substring(gap + 2));
+		if (head == null || rest == null) {
+			return null;
+		}
+		int groups = tail == null ? 8 : 6;
+		if (gap < 0 ? head.length != groups : head.length + rest.length >= groups) {
+			return null;
+		}
+		byte[] address = new byte[16];
+		for (int i = 0; i < head.length; i++) {
+			address[2 * i] = (byte) (head[i] >> 8);
+			address[2 * i + 1] = (byte) head[i];
+		}
+		int offset = groups - rest.length;
+		for (int i = 0; i < rest.length; i++) {
+			address[2 * (offset + i)] = (byte) (rest[i] >> 8);
+			address[2 * (offset + i) + 1] = (byte) rest[i];
+		}
+		if (tail != null) {
+			System.arraycopy(tail, 0, address, 12, 4);
+		}
+		return isIpv4Mapped(address) ? Arrays.copyOfRange(address, 12, 16) : address;
+	}
+
+	private static int[] parseGroups(String text) {
+		if (text.isEmpty()) {
+			return new int[0];
+		}
+		String[] parts = text.split(":", -1);
+		int[] groups = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			String part = parts[i];
+			if (part.isEmpty() || part.length() > 4) {
+				return null;
+			}
+			for (int j = 0; j < part.length(); j++) {
+				if (Character.digit(part.charAt(j), 16) < 0) {
+					return null;
+				}
+			}
+			groups[i] = Integer.parseInt(part, 16);
+		}
+		return groups;
+	}
+
+	private static boolean isIpv4Mapped(byte[] address) {
+		for (int i = 0; i < 10; i++) {
+			if (address[i] != 0) {
+				return false;
+			}
+		}
+		return address[10] == (byte) 0xff && address[11] == (byte) 0xff;
+	}
+}
@@ -0,0 +1,11 @@
+package ru.practicum.stats.util;
+
+/**
+ * What a bounded hit queue does with a hit offered while it is full: BLOCK waits for room, DROP
+ * discards the hit and reports it accepted, REJECT discards it and reports it refused.
+ */
+public enum OverflowPolicy {
+	BLOCK,
+	DROP,
+	REJECT
+}
@@ -0,0 +1,18 @@
+package ru.practicum.stats;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Alternative stats server on WebFlux and R2DBC, serving /hit, /hit/batch and /stats from raw hits
+ * on event loop threads. It keeps no rollups, so ewm-stats-server may share its database only with
+ * {@code stats.rollup.enabled=false}.
+ */
+@SpringBootApplication
+@EnableScheduling
+public class ReactiveStatsServiceApplication {
+	public static void main(String[] args) {
+		SpringApplication.run(ReactiveStatsServiceApplication.class, args);
+	}
+}
@@ -0,0 +1,135 @@
+package ru.practicum.stats.controller;
+
+import jakarta.validation.Valid;
+import jakarta.validation.Validator;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.StatsHeaders;
+import ru.practicum.stats.dto.StatsMediaTypes;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.repository.HitRepository;
+import ru.practicum.stats.repository.IngestBatchRepository;
+import ru.practicum.stats.service.HitIngestor;
+import ru.practicum.stats.util.IpAddresses;
+
+@RestController
+public class StatsController {
+	private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private final HitIngestor ingestor;
+	private final HitRepository repository;
+	private final IngestBatchRepository batchRepository;
+	private final TransactionalOperator transactionalOperator;
+	private final Validator validator;
+	private final int batchSize;
+
+	public StatsController(HitIngestor ingestor,
+	                       HitRepository repository,
+	                       IngestBatchRepository batchRepository,
+	                       TransactionalOperator transactionalOperator,
+	                       Validator validator,
+	                       @Value("${stats.ingest.batch-size:1000}") int batchSize) {
+		this.ingestor = ingestor;
+		this.repository = repository;
+		this.batchRepository = batchRepository;
+		this.transactionalOperator = transactionalOperator;
+		this.validator = validator;
+		this.batchSize = batchSize;
+	}
+
+	@PostMapping("/hit")
+	public Mono<ResponseEntity<Void>> hit(@Valid @RequestBody EndpointHitDto dto) {
+		try {
+			dto.setIp(IpAddresses.normalize(dto.getIp()));
+		} catch (IllegalArgumentException ex) {
+			return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+		}
+		return ingestor.submit(dto)
+				.thenReturn(ResponseEntity.status(HttpStatus.CREATED).<Void>build())
+				.onErrorResume(HitIngestor.QueueFullException.class,
+						ex -> Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build()));
+	}
+
+	/**
+	 * Reads the body as a stream of hits and inserts them in chunks, requesting more of the body only
+	 * after the previous chunk has been stored. Hits failing validation are skipped and counted.
+	 *
+	 * <p>A batch with an idempotency key is stored in one transaction together with its key, and a batch
+	 * sent again with a stored key is answered 200 OK as a duplicate without storing anything.
+	 */
+	@PostMapping(value = "/hit/batch",
+			consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE, StatsMediaTypes.SMILE})
+	public Mono<ResponseEntity<HitBatchResultDto>> hitBatch(@RequestHeader(value = StatsHeaders.IDEMPOTENCY_KEY, required = false) String batchKey,
+	                                                       @RequestBody Flux<EndpointHitDto> hits) {
+		if (batchKey != null && (batchKey.isBlank() || batchKey.length() > StatsHeaders.MAX_IDEMPOTENCY_KEY_LENGTH)) {
+			return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+		}
+		AtomicLong rejected = new AtomicLong();
+		Mono<HitBatchResultDto> stored = hits.filter(hit -> {
+					if (validator.validate(hit).isEmpty() && normalizeIp(hit)) {
+						return true;
+					}
+					rejected.incrementAndGet();
+					return false;
+				})
+				.buffer(batchSize)
+				.concatMap(ingestor::write)
+				.reduce(0L, Long::sum)
+				.map(accepted -> new HitBatchResultDto(accepted, rejected.get()));
+		Mono<HitBatchResultDto> result = batchKey == null
+				? stored
+				: batchRepository.claim(batchKey)
+						.flatMap(claimed -> claimed ? stored : Mono.just(new HitBatchResultDto(0, 0, true)))
+						.as(transactionalOperator::transactional);
+		// A repeated batch was stored by an earlier request.
+		return result.map(batch -> ResponseEntity.status(batch.isDuplicate() ? HttpStatus.OK : HttpStatus.CREATED).body(batch));
+	}
+
+	@GetMapping("/stats")
+	public ResponseEntity<Flux<ViewStatsDto>> getStats(@RequestParam("start") String start,
+	                                                  @RequestParam("end") String end,
+	                                                  @RequestParam(value = "uris", required = false) List<String> uris,
+	                                                  @RequestParam(value = "unique", defaultValue = "false") boolean unique) {
+		LocalDateTime startDt;
+		LocalDateTime endDt;
+		try {
+			startDt = LocalDateTime.parse(URLDecoder.decode(start, StandardCharsets.UTF_8), FORMATTER);
+			endDt = LocalDateTime.parse(URLDecoder.decode(end, StandardCharsets.UTF_8), FORMATTER);
+		} catch (DateTimeParseException ex) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
+		if (startDt.isAfter(endDt)) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
+
+		return ResponseEntity.ok(repository.aggregate(startDt, endDt, uris == null || uris.isEmpty() ? null : uris, unique));
+	}
+
+	private static boolean normalizeIp(EndpointHitDto hit) {
+		try {
+			hit.setIp(IpAddresses.normalize(hit.getIp()));
+			return true;
+		} catch (IllegalArgumentException ex) {
+			return false;
+		}
+	}
+}
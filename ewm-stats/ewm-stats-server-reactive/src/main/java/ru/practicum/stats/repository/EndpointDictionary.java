@@ -0,0 +1,87 @@
+package ru.practicum.stats.repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * Interns app names and uris into stats_apps and stats_uris, caching the ids in memory. Every
+ * statement commits on its own, even when called inside a transaction, so an id is cached only once
+ * the database has it.
+ */
+@Repository
+public class EndpointDictionary {
+	private final Dictionary apps;
+	private final Dictionary uris;
+
+	public EndpointDictionary(DatabaseClient client) {
+		this.apps = new Dictionary(client, "stats_apps", "app");
+		this.uris = new Dictionary(client, "stats_uris", "uri");
+	}
+
+	/**
+	 * Returns the ids of the app names, creating the missing ones.
+	 */
+	public Mono<Map<String, Integer>> appIds(Collection<String> values) {
+		return apps.idsOf(values);
+	}
+
+	/**
+	 * Returns the ids of the uris, creating the missing ones.
+	 */
+	public Mono<Map<String, Integer>> uriIds(Collection<String> values) {
+		return uris.idsOf(values);
+	}
+
+	private static class Dictionary {
+		private final DatabaseClient client;
+		private final String table;
+		private final String column;
+		private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+		Dictionary(DatabaseClient client, String table, String column) {
+			this.client = client;
+			this.table = table;
+			this.column = column;
+		}
+
+		Mono<Map<String, Integer>> idsOf(Collection<String> values) {
+			Map<String, Integer> found = new HashMap<>();
+			Set<String> missing = new TreeSet<>();
+			for (String value : values) {
+				Integer id = ids.get(value);
+				if (id == null) {
+					missing.add(value);
+				} else {
+					found.put(value, id);
+				}
+			}
+			if (missing.isEmpty()) {
+				return Mono.just(found);
+			}
+			String[] names = missing.toArray(String[]::new);
+			// Inserting in sorted order keeps concurrent batches from deadlocking on the unique index.
+			return client.sql("INSERT INTO " + table + " (" + column + ") " +
+							"SELECT name FROM unnest(CAST(:names AS VARCHAR[])) AS n(name) ORDER BY name " +
+							"ON CONFLICT (" + column + ") DO NOTHING")
+					.bind("names", names)
+					.then()
+					.thenMany(client.sql("SELECT id, " + column + " FROM " + table +
+									" WHERE " + column + " = ANY(CAST(:names AS VARCHAR[]))")
+							.bind("names", names)
+							.map(row -> Map.entry(row.get(column, String.class), row.get("id", Integer.class)))
+							.all())
+					.doOnNext(entry -> ids.put(entry.getKey(), entry.getValue()))
+					.collect(() -> found, (map, entry) -> map.put(entry.getKey(), entry.getValue()))
+					// Leaves any surrounding transaction, whose rollback would otherwise undo cached ids.
+					.contextWrite(context -> Context.empty());
+		}
+	}
+}
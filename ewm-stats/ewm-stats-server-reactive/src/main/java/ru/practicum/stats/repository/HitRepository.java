@@ -0,0 +1,69 @@
+package ru.practicum.stats.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+
+@Repository
+public class HitRepository {
+	private final DatabaseClient client;
+
+	public HitRepository(DatabaseClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Inserts the hits with a single statement over unnested column arrays.
+	 */
+	public Mono<Long> insert(List<EndpointHitDto> hits, Map<String, Integer> appIds, Map<String, Integer> uriIds) {
+		Integer[] apps = new Integer[hits.size()];
+		Integer[] uris = new Integer[hits.size()];
+		String[] ips = new String[hits.size()];
+		LocalDateTime[] timestamps = new LocalDateTime[hits.size()];
+		for (int i = 0; i < hits.size(); i++) {
+			EndpointHitDto hit = hits.get(i);
+			apps[i] = appIds.get(hit.getApp());
+			uris[i] = uriIds.get(hit.getUri());
+			ips[i] = hit.getIp();
+			timestamps[i] = hit.getTimestamp();
+		}
+		return client.sql("INSERT INTO endpoint_hits (app_id, uri_id, ip, timestamp) " +
+						"SELECT app_id, uri_id, CAST(ip AS INET), timestamp FROM unnest(CAST(:apps AS INT[]), " +
+						"CAST(:uris AS INT[]), CAST(:ips AS VARCHAR[]), CAST(:timestamps AS TIMESTAMP[])) " +
+						"AS h(app_id, uri_id, ip, timestamp)")
+				.bind("apps", apps)
+				.bind("uris", uris)
+				.bind("ips", ips)
+				.bind("timestamps", timestamps)
+				.fetch()
+				.rowsUpdated();
+	}
+
+	/**
+	 * Counts hits, or distinct IPs when {@code unique} is set, per endpoint in the inclusive range, most
+	 * viewed first, emitting rows as the database produces them. {@code uris} is null to count every endpoint.
+	 */
+	public Flux<ViewStatsDto> aggregate(LocalDateTime start, LocalDateTime end, Collection<String> uris, boolean unique) {
+		DatabaseClient.GenericExecuteSpec spec = client.sql(
+						"SELECT a.app, u.uri, " + (unique ? "COUNT(DISTINCT h.ip)" : "SUM(h.hits)") + " AS hits " +
+						"FROM endpoint_hits h JOIN stats_apps a ON a.id = h.app_id JOIN stats_uris u ON u.id = h.uri_id " +
+						"WHERE h.timestamp BETWEEN :start AND :end" +
+						(uris == null ? "" : " AND u.uri = ANY(CAST(:uris AS VARCHAR[]))") +
+						" GROUP BY a.app, u.uri ORDER BY hits DESC")
+				.bind("start", start)
+				.bind("end", end);
+		if (uris != null) {
+			spec = spec.bind("uris", uris.toArray(String[]::new));
+		}
+		return spec.map(row -> new ViewStatsDto(row.get("app", String.class), row.get("uri", String.class),
+						row.get("hits", Long.class)))
+				.all();
+	}
+}
@@ -0,0 +1,51 @@
+package ru.practicum.stats.repository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Idempotency keys of the hit batches stored so far, kept for {@code retention}; the same table
+ * ewm-stats-server uses, so a batch is stored once whichever server it is retried against.
+ */
+@Repository
+public class IngestBatchRepository {
+	private static final Logger log = LoggerFactory.getLogger(IngestBatchRepository.class);
+	private final DatabaseClient client;
+	private final Duration retention;
+
+	public IngestBatchRepository(DatabaseClient client,
+	                             @Value("${stats.ingest.batch-keys.retention:7d}") Duration retention) {
+		this.client = client;
+		this.retention = retention;
+	}
+
+	/**
+	 * Records the key in the current transaction; emits false if it was recorded before. A concurrent
+	 * transaction claiming the same key waits until this one ends.
+	 */
+	public Mono<Boolean> claim(String key) {
+		return client.sql("INSERT INTO stats_ingest_batches (batch_key, created) VALUES (:key, :created) ON CONFLICT DO NOTHING")
+				.bind("key", key)
+				.bind("created", LocalDateTime.now())
+				.fetch()
+				.rowsUpdated()
+				.map(inserted -> inserted == 1);
+	}
+
+	@Scheduled(cron = "${stats.ingest.batch-keys.cron:0 15 3 * * *}")
+	public Mono<Void> purge() {
+		return client.sql("DELETE FROM stats_ingest_batches WHERE created < :before")
+				.bind("before", LocalDateTime.now().minus(retention))
+				.fetch()
+				.rowsUpdated()
+				.doOnNext(deleted -> log.info("Purged {} expired ingest batch keys", deleted))
+				.then();
+	}
+}
@@ -0,0 +1,151 @@
+package ru.practicum.stats.service;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.repository.EndpointDictionary;
+import ru.practicum.stats.repository.HitRepository;
+
+/**
+ * Group commit for single hits: each request waits, without holding a thread, until the batch its
+ * hit was collected into has been inserted. The queue is drained only as fast as the inserts in
+ * flight allow, so a slow database fills the queue instead of piling up statements. On shutdown the
+ * queued hits are still inserted, waiting up to {@code shutdown-timeout} for them.
+ */
+@Service
+public class HitIngestor implements SmartLifecycle {
+	private static final Logger log = LoggerFactory.getLogger(HitIngestor.class);
+	private final EndpointDictionary dictionary;
+	private final HitRepository repository;
+	private final int batchSize;
+	private final Duration flushInterval;
+	private final int concurrency;
+	private final Duration shutdownTimeout;
+	private final Sinks.Many<PendingHit> queue;
+	private final CountDownLatch drained = new CountDownLatch(1);
+	private volatile Disposable drain;
+
+	public HitIngestor(EndpointDictionary dictionary,
+	                   HitRepository repository,
+	                   @Value("${stats.ingest.capacity:65536}") int capacity,
+	                   @Value("${stats.ingest.batch-size:1000}") int batchSize,
+	                   @Value("${stats.ingest.flush-interval:20ms}") Duration flushInterval,
+	                   @Value("${stats.ingest.concurrency:4}") int concurrency,
+	                   @Value("${stats.ingest.shutdown-timeout:30s}") Duration shutdownTimeout) {
+		this.dictionary = dictionary;
+		this.repository = repository;
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.concurrency = concurrency;
+		this.shutdownTimeout = shutdownTimeout;
+		this.queue = Sinks.many().unicast().onBackpressureBuffer(Queues.<PendingHit>get(capacity).get());
+	}
+
+	@Override
+	public void start() {
+		drain = queue.asFlux()
+				.bufferTimeout(batchSize, flushInterval, true)
+				.flatMap(this::insert, concurrency, 1)
+				.doFinally(signal -> drained.countDown())
+				.subscribe();
+	}
+
+	/**
+	 * Stops taking hits and waits until the queued ones and the inserts in flight are done.
+	 */
+	@Override
+	public void stop() {
+		synchronized (queue) {
+			queue.tryEmitComplete();
+		}
+		try {
+			if (!drained.await(shutdownTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+				log.warn("Queued hits were not inserted within {}, dropping them", shutdownTimeout);
+				drain.dispose();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			drain.dispose();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return drain != null && drained.getCount() > 0;
+	}
+
+	@Override
+	public int getPhase() {
+		// The web server stops in phase DEFAULT_PHASE - 2048; stopping in a lower phase, after it, lets hits
+		// accepted by in-flight requests still be inserted and answered.
+		return SmartLifecycle.DEFAULT_PHASE - 4096;
+	}
+
+	/**
+	 * Completes once the hit has been stored, or fails with {@link QueueFullException} right away when
+	 * the queue is full.
+	 */
+	public Mono<Void> submit(EndpointHitDto hit) {
+		return Mono.create(sink -> {
+			Sinks.EmitResult result;
+			// The queue accepts one producer at a time; emitting takes no longer than an offer.
+			synchronized (queue) {
+				result = queue.tryEmitNext(new PendingHit(hit, sink));
+			}
+			if (result.isFailure()) {
+				sink.error(new QueueFullException());
+			}
+		});
+	}
+
+	/**
+	 * Stores the hits, creating ids for apps and uris seen for the first time, and returns how many were stored.
+	 */
+	public Mono<Long> write(List<EndpointHitDto> hits) {
+		if (hits.isEmpty()) {
+			return Mono.just(0L);
+		}
+		Set<String> apps = new HashSet<>();
+		Set<String> uris = new HashSet<>();
+		for (EndpointHitDto hit : hits) {
+			apps.add(hit.getApp());
+			uris.add(hit.getUri());
+		}
+		return Mono.zip(dictionary.appIds(apps), dictionary.uriIds(uris))
+				.flatMap(ids -> repository.insert(hits, ids.getT1(), ids.getT2()));
+	}
+
+	private Mono<Void> insert(List<PendingHit> batch) {
+		return write(batch.stream().map(PendingHit::hit).toList())
+				.doOnSuccess(written -> batch.forEach(pending -> pending.done().success()))
+				.doOnError(ex -> {
+					log.error("Failed to insert {} hits", batch.size(), ex);
+					batch.forEach(pending -> pending.done().error(ex));
+				})
+				.onErrorResume(ex -> Mono.empty())
+				.then();
+	}
+
+	private record PendingHit(EndpointHitDto hit, MonoSink<Void> done) {
+	}
+
+	public static class QueueFullException extends RuntimeException {
+		public QueueFullException() {
+			super("Hit queue is full");
+		}
+	}
+}
@@ -0,0 +1,38 @@
+-- Same tables as ewm-stats-server, which also migrates older layouts and maintains the monthly
+-- partitions; without it every hit stays in endpoint_hits_default.
+CREATE TABLE IF NOT EXISTS stats_apps (
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    app VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_stats_apps PRIMARY KEY (id),
+    CONSTRAINT uq_stats_apps_app UNIQUE (app)
+);
+
+CREATE TABLE IF NOT EXISTS stats_uris (
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    uri VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_stats_uris PRIMARY KEY (id),
+    CONSTRAINT uq_stats_uris_uri UNIQUE (uri)
+);
+
+CREATE TABLE IF NOT EXISTS endpoint_hits (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    app_id INT,
+    uri_id INT,
+    ip INET,
+    timestamp TIMESTAMP NOT NULL,
+    hits INT NOT NULL DEFAULT 1,
+    CONSTRAINT pk_endpoint_hits PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+CREATE TABLE IF NOT EXISTS endpoint_hits_default PARTITION OF endpoint_hits DEFAULT;
+
+CREATE INDEX IF NOT EXISTS idx_timestamp ON endpoint_hits (timestamp);
+
+-- Idempotency keys of stored hit batches; a batch sent again with the same key is not stored twice.
+CREATE TABLE IF NOT EXISTS stats_ingest_batches (
+    batch_key VARCHAR(255) NOT NULL,
+    created TIMESTAMP NOT NULL,
+    CONSTRAINT pk_stats_ingest_batches PRIMARY KEY (batch_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_stats_ingest_batches_created ON stats_ingest_batches (created);
@@ -1,57 +1,216 @@
 package ru.practicum.stats.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.LiveStatsDto;
+import ru.practicum.stats.dto.StatsHeaders;
+import ru.practicum.stats.dto.StatsMediaTypes;
+import ru.practicum.stats.dto.TimeSeriesDto;
 import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.Granularity;
 import ru.practicum.stats.service.StatsService;
 
 @RestController
 public class StatsController {
 	private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final MediaType SMILE = MediaType.parseMediaType(StatsMediaTypes.SMILE);
 	private final StatsService statsService;
+	private final ObjectMapper objectMapper;
+	private final ObjectMapper smileMapper;
+	private final ObjectReader hitReader;
+	private final ObjectReader smileHitReader;
+	private final int maxTopK;
+	private final int maxTimeSeriesBuckets;
 
-	public StatsController(StatsService statsService) {
+	public StatsController(StatsService statsService,
+	                       ObjectMapper objectMapper,
+	                       @Value("${stats.top.max-k:100}") int maxTopK,
+	                       @Value("${stats.timeseries.max-buckets:10000}") int maxTimeSeriesBuckets) {
 		this.statsService = statsService;
+		this.objectMapper = objectMapper;
+		this.smileMapper = objectMapper.copyWith(new SmileFactory());
+		this.hitReader = objectMapper.readerFor(EndpointHitDto.class);
+		this.smileHitReader = smileMapper.readerFor(EndpointHitDto.class);
+		this.maxTopK = maxTopK;
+		this.maxTimeSeriesBuckets = maxTimeSeriesBuckets;
 	}
 
 	@PostMapping("/hit")
 	public ResponseEntity<Void> hit(@Valid @RequestBody EndpointHitDto dto) {
-		statsService.saveHit(dto);
+		try {
+			if (!statsService.saveHit(dto)) {
+				return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+			}
+		} catch (IllegalArgumentException ex) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
 		return ResponseEntity.status(HttpStatus.CREATED).build();
 	}
 
+	@PostMapping(value = "/hit/batch",
+			consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE, StatsMediaTypes.SMILE})
+	public ResponseEntity<HitBatchResultDto> hitBatch(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+	                                                  @RequestHeader(value = StatsHeaders.IDEMPOTENCY_KEY, required = false) String batchKey,
+	                                                  InputStream body) throws IOException {
+		if (batchKey != null && (batchKey.isBlank() || batchKey.length() > StatsHeaders.MAX_IDEMPOTENCY_KEY_LENGTH)) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
+		ObjectReader reader = SMILE.includes(contentType) ? smileHitReader : hitReader;
+		// A top-level array and a sequence of root-level values are both read as a stream of hits.
+		try (MappingIterator<EndpointHitDto> hits = reader.readValues(body)) {
+			HitBatchResultDto result = statsService.saveHits(hits, batchKey);
+			// A repeated batch was stored by an earlier request.
+			return ResponseEntity.status(result.isDuplicate() ? HttpStatus.OK : HttpStatus.CREATED).body(result);
+		} catch (JsonProcessingException ex) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
+	}
+
 	@GetMapping("/stats")
 	public ResponseEntity<List<ViewStatsDto>> getStats(@RequestParam("start") String start,
 	                                                  @RequestParam("end") String end,
 	                                                  @RequestParam(value = "uris", required = false) List<String> uris,
-	                                                  @RequestParam(value = "unique", defaultValue = "false") boolean unique) {
+	                                                  @RequestParam(value = "unique", defaultValue = "false") boolean unique,
+	                                                  @RequestParam(value = "approx", defaultValue = "true") boolean approx) {
+		TimeRange range = parseRange(start, end);
+		if (range == null) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
+
+		return ResponseEntity.ok(statsService.getStats(range.start(), range.end(), uris, unique, approx));
+	}
+
+	/**
+	 * Writes each count as soon as it is read from the storage instead of building the whole list, so
+	 * memory stays flat for queries without a uris filter. Unique counts are exact in this mode.
+	 */
+	@GetMapping(value = "/stats", params = "stream=true")
+	public void streamStats(@RequestParam("start") String start,
+	                        @RequestParam("end") String end,
+	                        @RequestParam(value = "uris", required = false) List<String> uris,
+	                        @RequestParam(value = "unique", defaultValue = "false") boolean unique,
+	                        @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.ALL_VALUE) String accept,
+	                        HttpServletResponse response) throws IOException {
+		TimeRange range = parseRange(start, end);
+		if (range == null) {
+			response.setStatus(HttpStatus.BAD_REQUEST.value());
+			return;
+		}
+
+		boolean smile = MediaType.parseMediaTypes(accept).stream().anyMatch(SMILE::equalsTypeAndSubtype);
+		response.setStatus(HttpStatus.OK.value());
+		response.setContentType(smile ? StatsMediaTypes.SMILE : MediaType.APPLICATION_JSON_VALUE);
+		ObjectMapper mapper = smile ? smileMapper : objectMapper;
+		try (JsonGenerator generator = mapper.getFactory().createGenerator(response.getOutputStream())) {
+			generator.writeStartArray();
+			statsService.streamStats(range.start(), range.end(), uris, unique, dto -> {
+				try {
+					generator.writeObject(dto);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+			generator.writeEndArray();
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	/**
+	 * Returns up to {@code k} endpoints with the most hits in the range, most hit first; hit counts come
+	 * from heavy-hitter summaries and may overstate an endpoint. With {@code unique} every endpoint is
+	 * ranked by distinct IPs, estimated from the rollup sketches when {@code approx} is set and counted
+	 * from raw hits otherwise.
+	 */
+	@GetMapping("/stats/top")
+	public ResponseEntity<List<ViewStatsDto>> getTop(@RequestParam("start") String start,
+	                                                 @RequestParam("end") String end,
+	                                                 @RequestParam(value = "k", defaultValue = "10") int k,
+	                                                 @RequestParam(value = "unique", defaultValue = "false") boolean unique,
+	                                                 @RequestParam(value = "approx", defaultValue = "true") boolean approx) {
+		TimeRange range = parseRange(start, end);
+		if (range == null || k < 1 || k > maxTopK) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
+
+		return ResponseEntity.ok(statsService.getTop(range.start(), range.end(), k, unique, approx));
+	}
+
+	/**
+	 * Returns one series of per-bucket counts for each endpoint with one of the uris. Intervals are
+	 * {@code 1m}, {@code 1h} and {@code 1d}; ranges with more than {@code max-buckets} buckets are rejected.
+	 */
+	@GetMapping("/stats/timeseries")
+	public ResponseEntity<List<TimeSeriesDto>> getTimeSeries(@RequestParam("start") String start,
+	                                                         @RequestParam("end") String end,
+	                                                         @RequestParam("uris") List<String> uris,
+	                                                         @RequestParam(value = "interval", defaultValue = "1h") String interval,
+	                                                         @RequestParam(value = "unique", defaultValue = "false") boolean unique,
+	                                                         @RequestParam(value = "approx", defaultValue = "true") boolean approx) {
+		TimeRange range = parseRange(start, end);
+		Granularity granularity = Granularity.fromInterval(interval);
+		if (range == null || granularity == null || uris.isEmpty()
+				|| granularity.getUnit().between(granularity.floor(range.start()), range.end()) >= maxTimeSeriesBuckets) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
+
+		return ResponseEntity.ok(statsService.getTimeSeries(range.start(), range.end(), uris, granularity, unique, approx));
+	}
+
+	/**
+	 * Returns the hits of each uri over the last 1, 5 and 60 minutes from in-memory counters, without a
+	 * database query. Only hits received by this node are counted.
+	 */
+	@GetMapping("/stats/live")
+	public ResponseEntity<List<LiveStatsDto>> getLiveStats(@RequestParam("uris") List<String> uris) {
+		if (uris.isEmpty()) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
+
+		return ResponseEntity.ok(statsService.getLiveStats(uris));
+	}
+
+	private static TimeRange parseRange(String start, String end) {
 		LocalDateTime startDt;
 		LocalDateTime endDt;
 		try {
 			startDt = LocalDateTime.parse(URLDecoder.decode(start, StandardCharsets.UTF_8), FORMATTER);
 			endDt = LocalDateTime.parse(URLDecoder.decode(end, StandardCharsets.UTF_8), FORMATTER);
 		} catch (DateTimeParseException ex) {
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
-		}
-
-		if (startDt.isAfter(endDt)) {
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+			return null;
 		}
+		return startDt.isAfter(endDt) ? null : new TimeRange(startDt, endDt);
+	}
 
-		return ResponseEntity.ok(statsService.getStats(startDt, endDt, uris, unique));
+	private record TimeRange(LocalDateTime start, LocalDateTime end) {
 	}
 }
 
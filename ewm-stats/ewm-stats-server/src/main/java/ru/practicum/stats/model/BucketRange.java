@@ -0,0 +1,96 @@
+package ru.practicum.stats.model;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Half-open time range [from, to) answered either from one rollup granularity or, when
+ * {@code granularity} is null, from raw hits.
+ */
+public record BucketRange(Granularity granularity, LocalDateTime from, LocalDateTime to) {
+	public boolean isRaw() {
+		return granularity == null;
+	}
+
+	/**
+	 * Splits the inclusive range [start, end] into whole day, hour and minute buckets, leaving raw
+	 * ranges only for the partial minutes at both edges.
+	 */
+	public static List<BucketRange> plan(LocalDateTime start, LocalDateTime end) {
+		return planHalfOpen(start, exclusiveEnd(end));
+	}
+
+	/**
+	 * Same as {@link #plan} for the half-open range [from, to).
+	 */
+	public static List<BucketRange> planHalfOpen(LocalDateTime from, LocalDateTime to) {
+		List<BucketRange> ranges = new ArrayList<>();
+		cover(from, to, Granularity.DAY, ranges);
+		return ranges;
+	}
+
+	/**
+	 * Same as {@link #plan}, except that the part before {@code compactedBefore}, whose raw hits and
+	 * minute rollups are gone, is covered by whole hours: its edges snap to the nearest hour, keeping at
+	 * least one. {@code compactedBefore} is null when nothing has been compacted.
+	 */
+	public static List<BucketRange> plan(LocalDateTime start, LocalDateTime end, LocalDateTime compactedBefore) {
+		return planHalfOpen(start, exclusiveEnd(end), compactedBefore);
+	}
+
+	public static List<BucketRange> planHalfOpen(LocalDateTime from, LocalDateTime to, LocalDateTime compactedBefore) {
+		if (compactedBefore == null || !from.isBefore(compactedBefore)) {
+			return planHalfOpen(from, to);
+		}
+		LocalDateTime first = nearestHour(from);
+		LocalDateTime split = compactedBefore;
+		if (to.isBefore(compactedBefore)) {
+			split = nearestHour(to);
+			if (!first.isBefore(split)) {
+				first = Granularity.HOUR.floor(from);
+				split = first.plusHours(1);
+			}
+		}
+		List<BucketRange> ranges = new ArrayList<>();
+		cover(first, split, Granularity.DAY, ranges);
+		cover(split, to, Granularity.DAY, ranges);
+		return ranges;
+	}
+
+	/**
+	 * The inclusive range [start, end] as a single raw range.
+	 */
+	public static BucketRange raw(LocalDateTime start, LocalDateTime end) {
+		return new BucketRange(null, start, exclusiveEnd(end));
+	}
+
+	private static LocalDateTime exclusiveEnd(LocalDateTime end) {
+		// Timestamps are stored with microsecond precision, so this turns the inclusive end into an exclusive one.
+		return end.truncatedTo(ChronoUnit.MICROS).plus(1, ChronoUnit.MICROS);
+	}
+
+	private static LocalDateTime nearestHour(LocalDateTime time) {
+		return Granularity.HOUR.floor(time.plusMinutes(30));
+	}
+
+	private static void cover(LocalDateTime from, LocalDateTime to, Granularity granularity, List<BucketRange> ranges) {
+		if (!from.isBefore(to)) {
+			return;
+		}
+		if (granularity == null) {
+			ranges.add(new BucketRange(null, from, to));
+			return;
+		}
+		LocalDateTime first = granularity.ceil(from);
+		LocalDateTime last = granularity.floor(to);
+		if (first.isBefore(last)) {
+			cover(from, first, granularity.finer(), ranges);
+			ranges.add(new BucketRange(granularity, first, last));
+			cover(last, to, granularity.finer(), ranges);
+		} else {
+			cover(from, to, granularity.finer(), ranges);
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package ru.practicum.stats.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Hit with app and uri replaced by their dictionary ids, as stored in endpoint_hits and the rollups.
+ * {@code hits} counts the identical hits the row stands for.
+ */
+public record EncodedHit(int appId, int uriId, String ip, LocalDateTime timestamp, int hits) {
+}
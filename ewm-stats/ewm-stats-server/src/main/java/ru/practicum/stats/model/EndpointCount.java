@@ -0,0 +1,7 @@
+package ru.practicum.stats.model;
+
+/**
+ * Aggregated hits of one endpoint, identified by dictionary ids until the response is built.
+ */
+public record EndpointCount(int appId, int uriId, long hits) {
+}
@@ -17,13 +17,21 @@ public class EndpointHit {
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
 	private Long id;
-	private String app;
-	private String uri;
+
+	@Column(name = "app_id")
+	private Integer appId;
+
+	@Column(name = "uri_id")
+	private Integer uriId;
+
+	@Column(columnDefinition = "inet")
 	private String ip;
 
 	@Column(name = "timestamp")
 	private LocalDateTime timestamp;
 
+	private Integer hits;
+
 	public Long getId() {
 		return id;
 	}
@@ -32,20 +40,20 @@ public class EndpointHit {
 		this.id = id;
 	}
 
-	public String getApp() {
-		return app;
+	public Integer getAppId() {
+		return appId;
 	}
 
-	public void setApp(String app) {
-		this.app = app;
+	public void setAppId(Integer appId) {
+		this.appId = appId;
 	}
 
-	public String getUri() {
-		return uri;
+	public Integer getUriId() {
+		return uriId;
 	}
 
-	public void setUri(String uri) {
-		this.uri = uri;
+	public void setUriId(Integer uriId) {
+		this.uriId = uriId;
 	}
 
 	public String getIp() {
@@ -63,6 +71,14 @@ public class EndpointHit {
 	public void setTimestamp(LocalDateTime timestamp) {
 		this.timestamp = timestamp;
 	}
+
+	public Integer getHits() {
+		return hits;
+	}
+
+	public void setHits(Integer hits) {
+		this.hits = hits;
+	}
 }
 
 
@@ -0,0 +1,62 @@
+package ru.practicum.stats.model;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public enum Granularity {
+	MINUTE("1m", ChronoUnit.MINUTES, "hit_rollup_minute", null),
+	HOUR("1h", ChronoUnit.HOURS, "hit_rollup_hour", "hit_top_hour"),
+	DAY("1d", ChronoUnit.DAYS, "hit_rollup_day", "hit_top_day");
+
+	private final String interval;
+	private final ChronoUnit unit;
+	private final String rollupTable;
+	private final String topTable;
+
+	Granularity(String interval, ChronoUnit unit, String rollupTable, String topTable) {
+		this.interval = interval;
+		this.unit = unit;
+		this.rollupTable = rollupTable;
+		this.topTable = topTable;
+	}
+
+	/**
+	 * Returns the granularity written as {@code 1m}, {@code 1h} or {@code 1d}, or null for any other interval.
+	 */
+	public static Granularity fromInterval(String interval) {
+		for (Granularity granularity : values()) {
+			if (granularity.interval.equals(interval)) {
+				return granularity;
+			}
+		}
+		return null;
+	}
+
+	public ChronoUnit getUnit() {
+		return unit;
+	}
+
+	public String getRollupTable() {
+		return rollupTable;
+	}
+
+	/**
+	 * Table of per-bucket heavy-hitter summaries, or null when none are kept at this granularity.
+	 */
+	public String getTopTable() {
+		return topTable;
+	}
+
+	public LocalDateTime floor(LocalDateTime time) {
+		return time.truncatedTo(unit);
+	}
+
+	public LocalDateTime ceil(LocalDateTime time) {
+		LocalDateTime floor = floor(time);
+		return floor.equals(time) ? floor : floor.plus(1, unit);
+	}
+
+	public Granularity finer() {
+		return this == MINUTE ? null : values()[ordinal() - 1];
+	}
+}
@@ -0,0 +1,9 @@
+package ru.practicum.stats.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Hits of one endpoint in the bucket starting at {@code bucket}.
+ */
+public record SeriesPoint(LocalDateTime bucket, int appId, int uriId, long hits) {
+}
@@ -0,0 +1,71 @@
+package ru.practicum.stats.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "jdbc", matchIfMissing = true)
+public class CompactionRepository {
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+
+	public CompactionRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	public State find() {
+		return jdbcTemplate.queryForObject(
+				"SELECT announced_before, compacted_before FROM stats_compaction WHERE id = 1",
+				new MapSqlParameterSource(),
+				(rs, rowNum) -> new State(toLocalDateTime(rs.getTimestamp("announced_before")),
+						toLocalDateTime(rs.getTimestamp("compacted_before"))));
+	}
+
+	public void announce(LocalDateTime before) {
+		jdbcTemplate.update(
+				"UPDATE stats_compaction SET announced_before = GREATEST(announced_before, :before) WHERE id = 1",
+				new MapSqlParameterSource("before", Timestamp.valueOf(before)));
+	}
+
+	public void markCompacted(LocalDateTime before) {
+		jdbcTemplate.update(
+				"UPDATE stats_compaction SET compacted_before = GREATEST(compacted_before, :before) WHERE id = 1",
+				new MapSqlParameterSource("before", Timestamp.valueOf(before)));
+	}
+
+	/**
+	 * Returns the timestamp of the oldest raw hit before {@code before}, or null if there is none.
+	 */
+	public LocalDateTime findOldestRawBefore(LocalDateTime before) {
+		return toLocalDateTime(jdbcTemplate.queryForObject(
+				"SELECT MIN(timestamp) FROM endpoint_hits WHERE timestamp < :before",
+				new MapSqlParameterSource("before", Timestamp.valueOf(before)),
+				Timestamp.class));
+	}
+
+	public int deleteRaw(LocalDateTime from, LocalDateTime to) {
+		return jdbcTemplate.update(
+				"DELETE FROM endpoint_hits WHERE timestamp >= :from AND timestamp < :to",
+				new MapSqlParameterSource("from", Timestamp.valueOf(from)).addValue("to", Timestamp.valueOf(to)));
+	}
+
+	public int deleteMinuteRollupsBefore(LocalDateTime before) {
+		return jdbcTemplate.update(
+				"DELETE FROM hit_rollup_minute WHERE bucket < :before",
+				new MapSqlParameterSource("before", Timestamp.valueOf(before)));
+	}
+
+	private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+		return timestamp == null ? null : timestamp.toLocalDateTime();
+	}
+
+	/**
+	 * @param announcedBefore readers answer the range before this from hour and day rollups only
+	 * @param compactedBefore raw hits and minute rollups before this have been deleted
+	 */
+	public record State(LocalDateTime announcedBefore, LocalDateTime compactedBefore) {
+	}
+}
@@ -0,0 +1,43 @@
+package ru.practicum.stats.repository;
+
+import jakarta.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * This node's copy of the announced compaction watermark, refreshed well within the interval
+ * between compaction runs so that no node reads raw hits another node is about to delete.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "jdbc", matchIfMissing = true)
+public class CompactionWatermark {
+	private final CompactionRepository repository;
+	private volatile LocalDateTime compactedBefore;
+
+	public CompactionWatermark(CompactionRepository repository) {
+		this.repository = repository;
+	}
+
+	@PostConstruct
+	@Scheduled(fixedDelayString = "${stats.compaction.refresh-interval:PT60S}")
+	public void refresh() {
+		compactedBefore = repository.find().announcedBefore();
+	}
+
+	/**
+	 * Returns the time before which only hour and day rollups may be read, or null if nothing is compacted.
+	 */
+	public LocalDateTime get() {
+		return compactedBefore;
+	}
+
+	/**
+	 * Whether a range starting at {@code start} reaches into the compacted part.
+	 */
+	public boolean covers(LocalDateTime start) {
+		LocalDateTime before = compactedBefore;
+		return before != null && start.isBefore(before);
+	}
+}
@@ -0,0 +1,245 @@
+package ru.practicum.stats.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.TimeSeriesDto;
+import ru.practicum.stats.dto.TimeSeriesPointDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.EncodedHit;
+import ru.practicum.stats.model.EndpointCount;
+import ru.practicum.stats.model.SeriesPoint;
+import ru.practicum.stats.util.StringIntMap;
+
+/**
+ * Interns app names and uris into the stats_apps and stats_uris tables, caching the ids in memory.
+ * Ids read or created inside a transaction are cached only once it commits, so a rolled back batch
+ * cannot leave an id in the cache that the database does not have.
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "jdbc", matchIfMissing = true)
+public class EndpointDictionary {
+	private static final int KEY_CHUNK_SIZE = 5000;
+	private final Dictionary apps;
+	private final Dictionary uris;
+
+	public EndpointDictionary(NamedParameterJdbcTemplate jdbcTemplate) {
+		this.apps = new Dictionary(jdbcTemplate, "stats_apps", "app");
+		this.uris = new Dictionary(jdbcTemplate, "stats_uris", "uri");
+	}
+
+	/**
+	 * Replaces app and uri with their ids, creating the ids of endpoints seen for the first time.
+	 */
+	public List<EncodedHit> encode(List<EndpointHitDto> hits) {
+		int[] appIds = apps.idsOf(hits, EndpointHitDto::getApp);
+		int[] uriIds = uris.idsOf(hits, EndpointHitDto::getUri);
+		List<EncodedHit> encoded = new ArrayList<>(hits.size());
+		for (int i = 0; i < hits.size(); i++) {
+			EndpointHitDto hit = hits.get(i);
+			encoded.add(new EncodedHit(appIds[i], uriIds[i], hit.getIp(), hit.getTimestamp(), 1));
+		}
+		return encoded;
+	}
+
+	/**
+	 * Returns the ids of the given uris, leaving out uris that have never been hit.
+	 */
+	public List<Integer> findUriIds(Collection<String> values) {
+		return List.copyOf(uris.find(values).values());
+	}
+
+	public List<ViewStatsDto> toViewStats(List<EndpointCount> counts) {
+		Set<Integer> appIds = new TreeSet<>();
+		Set<Integer> uriIds = new TreeSet<>();
+		for (EndpointCount count : counts) {
+			appIds.add(count.appId());
+			uriIds.add(count.uriId());
+		}
+		Map<Integer, String> appNames = apps.namesOf(appIds);
+		Map<Integer, String> uriNames = uris.namesOf(uriIds);
+		List<ViewStatsDto> result = new ArrayList<>(counts.size());
+		for (EndpointCount count : counts) {
+			result.add(new ViewStatsDto(appNames.get(count.appId()), uriNames.get(count.uriId()), count.hits()));
+		}
+		return result;
+	}
+
+	/**
+	 * Groups the points into one series per endpoint, keeping their order within each series.
+	 */
+	public List<TimeSeriesDto> toTimeSeries(List<SeriesPoint> points) {
+		Set<Integer> appIds = new TreeSet<>();
+		Set<Integer> uriIds = new TreeSet<>();
+		for (SeriesPoint point : points) {
+			appIds.add(point.appId());
+			uriIds.add(point.uriId());
+		}
+		Map<Integer, String> appNames = apps.namesOf(appIds);
+		Map<Integer, String> uriNames = uris.namesOf(uriIds);
+		Map<List<Integer>, TimeSeriesDto> series = new LinkedHashMap<>();
+		for (SeriesPoint point : points) {
+			series.computeIfAbsent(List.of(point.appId(), point.uriId()),
+							key -> new TimeSeriesDto(appNames.get(point.appId()), uriNames.get(point.uriId()), new ArrayList<>()))
+					.getPoints().add(new TimeSeriesPointDto(point.bucket(), point.hits()));
+		}
+		return List.copyOf(series.values());
+	}
+
+	private static class Dictionary {
+		private final NamedParameterJdbcTemplate jdbcTemplate;
+		private final String table;
+		private final String column;
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		private final StringIntMap ids = new StringIntMap();
+		private String[] names = new String[16];
+
+		Dictionary(NamedParameterJdbcTemplate jdbcTemplate, String table, String column) {
+			this.jdbcTemplate = jdbcTemplate;
+			this.table = table;
+			this.column = column;
+		}
+
+		int[] idsOf(List<EndpointHitDto> hits, Function<EndpointHitDto, String> value) {
+			int[] result = new int[hits.size()];
+			TreeSet<String> missing = new TreeSet<>();
+			lock.readLock().lock();
+			try {
+				for (int i = 0; i < result.length; i++) {
+					result[i] = ids.get(value.apply(hits.get(i)));
+					if (result[i] == StringIntMap.MISSING) {
+						missing.add(value.apply(hits.get(i)));
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+			if (missing.isEmpty()) {
+				return result;
+			}
+			Map<String, Integer> found = find(missing);
+			if (found.size() < missing.size()) {
+				missing.removeAll(found.keySet());
+				// Inserting in sorted order keeps concurrent batches from deadlocking on the unique index.
+				jdbcTemplate.batchUpdate(
+						"INSERT INTO " + table + " (" + column + ") VALUES (:value) ON CONFLICT (" + column + ") DO NOTHING",
+						missing.stream()
+								.map(name -> new MapSqlParameterSource("value", name))
+								.toArray(MapSqlParameterSource[]::new));
+				found.putAll(find(missing));
+			}
+			for (int i = 0; i < result.length; i++) {
+				if (result[i] == StringIntMap.MISSING) {
+					result[i] = found.get(value.apply(hits.get(i)));
+				}
+			}
+			return result;
+		}
+
+		Map<String, Integer> find(Collection<String> values) {
+			Map<String, Integer> found = new HashMap<>();
+			List<String> unknown = new ArrayList<>();
+			lock.readLock().lock();
+			try {
+				for (String name : values) {
+					int id = ids.get(name);
+					if (id == StringIntMap.MISSING) {
+						unknown.add(name);
+					} else {
+						found.put(name, id);
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+			Map<String, Integer> loaded = new HashMap<>();
+			for (int from = 0; from < unknown.size(); from += KEY_CHUNK_SIZE) {
+				jdbcTemplate.query(
+						"SELECT id, " + column + " FROM " + table + " WHERE " + column + " IN (:values)",
+						new MapSqlParameterSource("values", unknown.subList(from, Math.min(unknown.size(), from + KEY_CHUNK_SIZE))),
+						rs -> {
+							loaded.put(rs.getString(column), rs.getInt("id"));
+						});
+			}
+			remember(loaded);
+			found.putAll(loaded);
+			return found;
+		}
+
+		Map<Integer, String> namesOf(Set<Integer> values) {
+			Map<Integer, String> found = new HashMap<>();
+			List<Integer> unknown = new ArrayList<>();
+			lock.readLock().lock();
+			try {
+				for (int id : values) {
+					String name = id < names.length ? names[id] : null;
+					if (name == null) {
+						unknown.add(id);
+					} else {
+						found.put(id, name);
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+			Map<String, Integer> loaded = new HashMap<>();
+			for (int from = 0; from < unknown.size(); from += KEY_CHUNK_SIZE) {
+				jdbcTemplate.query(
+						"SELECT id, " + column + " FROM " + table + " WHERE id IN (:ids)",
+						new MapSqlParameterSource("ids", unknown.subList(from, Math.min(unknown.size(), from + KEY_CHUNK_SIZE))),
+						rs -> {
+							loaded.put(rs.getString(column), rs.getInt("id"));
+						});
+			}
+			remember(loaded);
+			loaded.forEach((name, id) -> found.put(id, name));
+			return found;
+		}
+
+		private void remember(Map<String, Integer> loaded) {
+			if (loaded.isEmpty()) {
+				return;
+			}
+			if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+				cache(loaded);
+				return;
+			}
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					cache(loaded);
+				}
+			});
+		}
+
+		private void cache(Map<String, Integer> loaded) {
+			lock.writeLock().lock();
+			try {
+				loaded.forEach((name, id) -> {
+					ids.put(name, id);
+					if (id >= names.length) {
+						names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+					}
+					names[id] = name;
+				});
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package ru.practicum.stats.repository;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.model.EncodedHit;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "jdbc", matchIfMissing = true)
+public class EndpointHitBulkLoader {
+	private static final String COPY_SQL =
+			"COPY endpoint_hits (app_id, uri_id, ip, timestamp, hits) FROM STDIN WITH (FORMAT csv)";
+	private final DataSource dataSource;
+
+	public EndpointHitBulkLoader(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	/**
+	 * Streams the hits into endpoint_hits with a single COPY statement on the connection
+	 * bound to the current transaction.
+	 */
+	public long copy(List<EncodedHit> hits) {
+		if (hits.isEmpty()) {
+			return 0;
+		}
+		StringBuilder csv = new StringBuilder(hits.size() * 48);
+		for (EncodedHit hit : hits) {
+			csv.append(hit.appId()).append(',').append(hit.uriId()).append(',');
+			appendField(csv, hit.ip()).append(',');
+			csv.append(hit.timestamp()).append(',').append(hit.hits()).append('\n');
+		}
+		Connection connection = DataSourceUtils.getConnection(dataSource);
+		try {
+			return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL, new StringReader(csv.toString()));
+		} catch (SQLException | IOException ex) {
+			throw new DataAccessResourceFailureException("COPY into endpoint_hits failed", ex);
+		} finally {
+			DataSourceUtils.releaseConnection(connection, dataSource);
+		}
+	}
+
+	private static StringBuilder appendField(StringBuilder csv, String value) {
+		return csv.append('"').append(value.replace("\"", "\"\"")).append('"');
+	}
+}
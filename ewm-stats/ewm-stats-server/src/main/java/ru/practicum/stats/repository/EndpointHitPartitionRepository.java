@@ -0,0 +1,94 @@
+package ru.practicum.stats.repository;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "jdbc", matchIfMissing = true)
+public class EndpointHitPartitionRepository {
+	private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("'y'yyyy'm'MM");
+	private static final String DEFAULT_PARTITION = "endpoint_hits_default";
+	private static final long MAINTENANCE_LOCK = 0x656e64706f696e74L;
+	private final JdbcTemplate jdbcTemplate;
+
+	public EndpointHitPartitionRepository(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	public boolean isPartitioned() {
+		return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+				"SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('endpoint_hits'))",
+				Boolean.class));
+	}
+
+	/**
+	 * Serializes partition maintenance across stats nodes until the current transaction ends.
+	 */
+	public void lockMaintenance() {
+		jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(?)", Object.class, MAINTENANCE_LOCK);
+	}
+
+	public void createDefaultPartition() {
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + DEFAULT_PARTITION + " PARTITION OF endpoint_hits DEFAULT");
+	}
+
+	public List<YearMonth> findMonthlyPartitions() {
+		return jdbcTemplate.queryForList(
+						"SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+						"WHERE i.inhparent = to_regclass('endpoint_hits') AND c.relname ~ '^endpoint_hits_y[0-9]{4}m[0-9]{2}$'",
+						String.class)
+				.stream()
+				.map(name -> YearMonth.parse(name.substring("endpoint_hits_".length()), PARTITION_SUFFIX))
+				.sorted()
+				.toList();
+	}
+
+	public List<YearMonth> findMonthsInDefaultPartition() {
+		return jdbcTemplate.queryForList(
+						"SELECT DISTINCT date_trunc('month', timestamp) FROM " + DEFAULT_PARTITION, Timestamp.class)
+				.stream()
+				.map(month -> YearMonth.from(month.toLocalDateTime()))
+				.toList();
+	}
+
+	/**
+	 * Creates the partition for {@code month}, first moving any rows of that month out of the
+	 * default partition, since PostgreSQL refuses to attach a range the default partition still holds.
+	 */
+	public void createMonthlyPartition(YearMonth month) {
+		String name = partitionName(month);
+		String from = "'" + month.atDay(1) + "'";
+		String to = "'" + month.plusMonths(1).atDay(1) + "'";
+		String range = "timestamp >= " + from + " AND timestamp < " + to;
+		Boolean pending = jdbcTemplate.queryForObject(
+				"SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE " + range + ")", Boolean.class);
+		if (!Boolean.TRUE.equals(pending)) {
+			jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF endpoint_hits FOR VALUES FROM (" + from + ") TO (" + to + ")");
+			return;
+		}
+		jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE endpoint_hits INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+		// The check constraint lets ATTACH skip re-validating every moved row.
+		jdbcTemplate.execute("ALTER TABLE " + name + " ADD CONSTRAINT " + name + "_range CHECK (" + range + ")");
+		jdbcTemplate.execute("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " WHERE " + range + " RETURNING *) " +
+				"INSERT INTO " + name + " SELECT * FROM moved");
+		jdbcTemplate.execute("ALTER TABLE endpoint_hits ATTACH PARTITION " + name + " FOR VALUES FROM (" + from + ") TO (" + to + ")");
+		jdbcTemplate.execute("ALTER TABLE " + name + " DROP CONSTRAINT " + name + "_range");
+	}
+
+	public void deleteFromDefaultPartitionBefore(YearMonth month) {
+		jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE timestamp < ?", Timestamp.valueOf(month.atDay(1).atStartOfDay()));
+	}
+
+	public void dropMonthlyPartition(YearMonth month) {
+		jdbcTemplate.execute("DROP TABLE IF EXISTS " + partitionName(month));
+	}
+
+	private static String partitionName(YearMonth month) {
+		return "endpoint_hits_" + PARTITION_SUFFIX.format(month);
+	}
+}
@@ -6,33 +6,33 @@ import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
-import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.EndpointCount;
 import ru.practicum.stats.model.EndpointHit;
 
 public interface EndpointHitRepository extends JpaRepository<EndpointHit, Long> {
 	@Query(
-			"SELECT new ru.practicum.stats.dto.ViewStatsDto(e.app, e.uri, COUNT(e.id)) " +
+			"SELECT new ru.practicum.stats.model.EndpointCount(e.appId, e.uriId, SUM(e.hits)) " +
 			"FROM EndpointHit e " +
 			"WHERE e.timestamp BETWEEN :start AND :end " +
-			"AND (:uris IS NULL OR e.uri IN :uris) " +
-			"GROUP BY e.app, e.uri " +
-			"ORDER BY COUNT(e.id) DESC"
+			"AND (:uriIds IS NULL OR e.uriId IN :uriIds) " +
+			"GROUP BY e.appId, e.uriId " +
+			"ORDER BY SUM(e.hits) DESC"
 	)
-	List<ViewStatsDto> aggregateAll(@Param("start") LocalDateTime start,
-	                                @Param("end") LocalDateTime end,
-	                                @Param("uris") Collection<String> uris);
+	List<EndpointCount> aggregateAll(@Param("start") LocalDateTime start,
+	                                 @Param("end") LocalDateTime end,
+	                                 @Param("uriIds") Collection<Integer> uriIds);
 
 	@Query(
-			"SELECT new ru.practicum.stats.dto.ViewStatsDto(e.app, e.uri, COUNT(DISTINCT e.ip)) " +
+			"SELECT new ru.practicum.stats.model.EndpointCount(e.appId, e.uriId, COUNT(DISTINCT e.ip)) " +
 			"FROM EndpointHit e " +
 			"WHERE e.timestamp BETWEEN :start AND :end " +
-			"AND (:uris IS NULL OR e.uri IN :uris) " +
-			"GROUP BY e.app, e.uri " +
+			"AND (:uriIds IS NULL OR e.uriId IN :uriIds) " +
+			"GROUP BY e.appId, e.uriId " +
 			"ORDER BY COUNT(DISTINCT e.ip) DESC"
 	)
-	List<ViewStatsDto> aggregateUnique(@Param("start") LocalDateTime start,
-	                                   @Param("end") LocalDateTime end,
-	                                   @Param("uris") Collection<String> uris);
+	List<EndpointCount> aggregateUnique(@Param("start") LocalDateTime start,
+	                                    @Param("end") LocalDateTime end,
+	                                    @Param("uriIds") Collection<Integer> uriIds);
 }
 
 
@@ -0,0 +1,484 @@
+package ru.practicum.stats.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.BucketRange;
+import ru.practicum.stats.model.EncodedHit;
+import ru.practicum.stats.model.EndpointCount;
+import ru.practicum.stats.model.Granularity;
+import ru.practicum.stats.model.SeriesPoint;
+import ru.practicum.stats.util.Hashing;
+import ru.practicum.stats.util.HyperLogLog;
+import ru.practicum.stats.util.IpAddresses;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "jdbc", matchIfMissing = true)
+public class HitRollupRepository {
+	private static final int KEY_CHUNK_SIZE = 5000;
+	private static final Comparator<RollupKey> KEY_ORDER = Comparator.comparing(RollupKey::bucket)
+			.thenComparingInt(RollupKey::appId)
+			.thenComparingInt(RollupKey::uriId);
+	private static final Comparator<EndpointCount> HITS_DESC = Comparator.comparingLong(EndpointCount::hits).reversed();
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+	private final CompactionWatermark watermark;
+	private final int sketchPrecision;
+
+	public HitRollupRepository(NamedParameterJdbcTemplate jdbcTemplate,
+	                           CompactionWatermark watermark,
+	                           @Value("${stats.sketch.precision:12}") int sketchPrecision) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.watermark = watermark;
+		this.sketchPrecision = sketchPrecision;
+	}
+
+	public void increment(List<EncodedHit> hits) {
+		for (Granularity granularity : Granularity.values()) {
+			Map<RollupKey, Rollup> rollups = new TreeMap<>(KEY_ORDER);
+			for (EncodedHit hit : hits) {
+				rollups.computeIfAbsent(new RollupKey(granularity.floor(hit.timestamp()), hit.appId(), hit.uriId()),
+								key -> new Rollup(new HyperLogLog(sketchPrecision)))
+						.add(Hashing.hash64(hit.ip()), hit.hits());
+			}
+			String table = granularity.getRollupTable();
+			// Upserting in key order also locks the rows in key order, so concurrent writers cannot deadlock.
+			jdbcTemplate.batchUpdate(
+					"INSERT INTO " + table + " (bucket, app_id, uri_id, hits, sketch) " +
+					"VALUES (:bucket, :appId, :uriId, :hits, :sketch) " +
+					"ON CONFLICT (bucket, app_id, uri_id) DO UPDATE SET hits = " + table + ".hits + EXCLUDED.hits",
+					rollups.entrySet().stream()
+							.map(entry -> keyParams(entry.getKey())
+									.addValue("hits", entry.getValue().hits)
+									.addValue("sketch", entry.getValue().sketch.toBytes()))
+							.toArray(MapSqlParameterSource[]::new));
+			mergeSketches(table, rollups);
+		}
+	}
+
+	/**
+	 * Answers the inclusive range [start, end] from whole rollup buckets, reading raw hits only for
+	 * the partial minutes at the edges, in a single statement.
+	 */
+	public List<EndpointCount> aggregate(LocalDateTime start, LocalDateTime end, Collection<Integer> uriIds) {
+		return aggregate(BucketRange.plan(start, end, watermark.get()), uriIds);
+	}
+
+	public List<EndpointCount> aggregate(List<BucketRange> plan, Collection<Integer> uriIds) {
+		MapSqlParameterSource params = new MapSqlParameterSource("uriIds", uriIds);
+		String ranges = union(plan, uriIds, params,
+				table -> "SELECT app_id, uri_id, hits FROM " + table,
+				"SELECT app_id, uri_id, SUM(hits) AS hits FROM endpoint_hits", " GROUP BY app_id, uri_id");
+		if (ranges.isEmpty()) {
+			return List.of();
+		}
+		return jdbcTemplate.query(
+				"SELECT app_id, uri_id, SUM(hits) AS hits FROM (" + ranges + ") ranges " +
+				"GROUP BY app_id, uri_id ORDER BY SUM(hits) DESC",
+				params,
+				(rs, rowNum) -> new EndpointCount(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+	}
+
+	/**
+	 * Passes the counts to the sink in descending order while the database still produces them, with
+	 * app and uri joined from the dictionaries, so memory use does not depend on the number of rows.
+	 * Unique counts are exact and always computed from raw hits, because merging sketches needs the
+	 * whole result before it can be ordered.
+	 */
+	public void stream(LocalDateTime start,
+	                   LocalDateTime end,
+	                   Collection<Integer> uriIds,
+	                   boolean unique,
+	                   boolean useRollups,
+	                   Consumer<ViewStatsDto> sink) {
+		MapSqlParameterSource params = new MapSqlParameterSource("uriIds", uriIds);
+		List<BucketRange> plan = useRollups && !unique
+				? BucketRange.plan(start, end, watermark.get())
+				: List.of(BucketRange.raw(start, end));
+		String ranges = union(plan, uriIds, params,
+				table -> "SELECT app_id, uri_id, hits FROM " + table,
+				"SELECT app_id, uri_id, " + (unique ? "COUNT(DISTINCT ip)" : "SUM(hits)") + " AS hits FROM endpoint_hits",
+				" GROUP BY app_id, uri_id");
+		if (ranges.isEmpty()) {
+			return;
+		}
+		// Runs inside a transaction with a fetch size set, so the driver reads the result through a cursor.
+		jdbcTemplate.query(
+				"SELECT a.app, u.uri, r.hits FROM (" +
+				"SELECT app_id, uri_id, SUM(hits) AS hits FROM (" + ranges + ") ranges GROUP BY app_id, uri_id) r " +
+				"JOIN stats_apps a ON a.id = r.app_id JOIN stats_uris u ON u.id = r.uri_id " +
+				"ORDER BY r.hits DESC",
+				params,
+				rs -> {
+					sink.accept(new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+				});
+	}
+
+	/**
+	 * Estimates distinct IPs per endpoint by merging the HyperLogLog sketches of whole buckets with the
+	 * raw IPs of the partial minutes at the edges. Endpoints with a bucket recorded before sketches
+	 * existed are counted exactly from raw hits instead.
+	 */
+	public List<EndpointCount> aggregateUniqueApprox(LocalDateTime start, LocalDateTime end, Collection<Integer> uriIds) {
+		return aggregateUniqueApprox(BucketRange.plan(start, end, watermark.get()), uriIds);
+	}
+
+	public List<EndpointCount> aggregateUniqueApprox(List<BucketRange> plan, Collection<Integer> uriIds) {
+		MapSqlParameterSource params = new MapSqlParameterSource("uriIds", uriIds);
+		String ranges = union(plan, uriIds, params,
+				table -> "SELECT app_id, uri_id, sketch, CAST(NULL AS INET) AS ip FROM " + table,
+				"SELECT DISTINCT app_id, uri_id, CAST(NULL AS BYTEA) AS sketch, ip FROM endpoint_hits", "");
+		if (ranges.isEmpty()) {
+			return List.of();
+		}
+		List<EndpointCount> result = new ArrayList<>();
+		Map<List<Integer>, HyperLogLog> unknown = new HashMap<>();
+		SketchMerger merger = new SketchMerger(result, unknown);
+		jdbcTemplate.query(ranges + " ORDER BY app_id, uri_id", params, rs -> {
+			merger.accept(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getBytes("sketch"), rs.getString("ip"));
+		});
+		merger.finish();
+		if (!unknown.isEmpty()) {
+			// Compaction fills in missing sketches before it deletes raw hits, so buckets without one lie
+			// past the watermark: their raw hits are added to the sketches of the rest of the range.
+			LocalDateTime from = plan.get(0).from();
+			LocalDateTime compactedBefore = watermark.get();
+			if (compactedBefore != null && from.isBefore(compactedBefore)) {
+				from = compactedBefore;
+			}
+			Set<Integer> unknownUris = new HashSet<>();
+			unknown.keySet().forEach(key -> unknownUris.add(key.get(1)));
+			jdbcTemplate.query(
+					"SELECT DISTINCT app_id, uri_id, ip FROM endpoint_hits " +
+					"WHERE timestamp >= :from AND timestamp < :to AND uri_id IN (:unknownUris)",
+					new MapSqlParameterSource("from", Timestamp.valueOf(from))
+							.addValue("to", Timestamp.valueOf(plan.get(plan.size() - 1).to()))
+							.addValue("unknownUris", unknownUris),
+					rs -> {
+						HyperLogLog sketch = unknown.get(List.of(rs.getInt("app_id"), rs.getInt("uri_id")));
+						if (sketch != null) {
+							sketch.add(Hashing.hash64(IpAddresses.normalize(rs.getString("ip"))));
+						}
+					});
+			unknown.forEach((key, sketch) -> result.add(new EndpointCount(key.get(0), key.get(1), sketch.estimate())));
+		}
+		result.sort(HITS_DESC);
+		return result;
+	}
+
+	/**
+	 * Counts hits, or estimates distinct IPs, of the given endpoints per bucket of the granularity, in
+	 * bucket order. Whole buckets are read from that granularity's rollup table with one range scan over
+	 * its primary key; only the partially covered buckets at the edges are assembled from finer rollups
+	 * and raw hits. Without rollups the buckets are computed from raw hits, with exact unique counts.
+	 */
+	public List<SeriesPoint> series(LocalDateTime start,
+	                                LocalDateTime end,
+	                                Collection<Integer> uriIds,
+	                                Granularity granularity,
+	                                boolean unique,
+	                                boolean useRollups) {
+		LocalDateTime to = BucketRange.raw(start, end).to();
+		if (!useRollups) {
+			return rawSeries(start, to, uriIds, granularity, unique, null);
+		}
+		List<SeriesPoint> points = new ArrayList<>();
+		LocalDateTime from = start;
+		LocalDateTime head = granularity.floor(start);
+		if (!head.equals(start)) {
+			from = granularity.ceil(start).isBefore(to) ? granularity.ceil(start) : to;
+			addEdge(head, start, from, uriIds, unique, points);
+		}
+		LocalDateTime tail = granularity.floor(to);
+		if (from.isBefore(tail)) {
+			addBuckets(from, tail, uriIds, granularity, unique, points);
+		}
+		if (tail.isBefore(to) && !tail.isBefore(from)) {
+			addEdge(tail, tail, to, uriIds, unique, points);
+		}
+		points.sort(Comparator.comparing(SeriesPoint::bucket));
+		return points;
+	}
+
+	private void addEdge(LocalDateTime bucket,
+	                     LocalDateTime from,
+	                     LocalDateTime to,
+	                     Collection<Integer> uriIds,
+	                     boolean unique,
+	                     List<SeriesPoint> points) {
+		List<BucketRange> plan = BucketRange.planHalfOpen(from, to, watermark.get());
+		List<EndpointCount> counts = unique ? aggregateUniqueApprox(plan, uriIds) : aggregate(plan, uriIds);
+		for (EndpointCount count : counts) {
+			points.add(new SeriesPoint(bucket, count.appId(), count.uriId(), count.hits()));
+		}
+	}
+
+	private void addBuckets(LocalDateTime from,
+	                        LocalDateTime to,
+	                        Collection<Integer> uriIds,
+	                        Granularity granularity,
+	                        boolean unique,
+	                        List<SeriesPoint> points) {
+		Set<SeriesPoint> unknown = new HashSet<>();
+		jdbcTemplate.query(
+				"SELECT bucket, app_id, uri_id, " + (unique ? "sketch" : "hits") + " FROM " + granularity.getRollupTable() +
+				" WHERE bucket >= :from AND bucket < :to AND uri_id IN (:uriIds) ORDER BY bucket",
+				new MapSqlParameterSource("from", Timestamp.valueOf(from))
+						.addValue("to", Timestamp.valueOf(to))
+						.addValue("uriIds", uriIds),
+				rs -> {
+					LocalDateTime bucket = rs.getTimestamp("bucket").toLocalDateTime();
+					if (!unique) {
+						points.add(new SeriesPoint(bucket, rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+						return;
+					}
+					byte[] sketch = rs.getBytes("sketch");
+					SeriesPoint point = new SeriesPoint(bucket, rs.getInt("app_id"), rs.getInt("uri_id"),
+							sketch == null ? 0 : HyperLogLog.fromBytes(sketch).estimate());
+					if (sketch == null) {
+						unknown.add(point);
+					} else {
+						points.add(point);
+					}
+				});
+		if (!unknown.isEmpty()) {
+			// Buckets rolled up before sketches existed are counted exactly from raw hits.
+			LocalDateTime first = unknown.stream().map(SeriesPoint::bucket).min(Comparator.naturalOrder()).orElseThrow();
+			LocalDateTime last = unknown.stream().map(SeriesPoint::bucket).max(Comparator.naturalOrder()).orElseThrow();
+			Set<Integer> unknownUris = new HashSet<>();
+			unknown.forEach(point -> unknownUris.add(point.uriId()));
+			points.addAll(rawSeries(first, last.plus(1, granularity.getUnit()), unknownUris, granularity, true,
+					point -> unknown.contains(new SeriesPoint(point.bucket(), point.appId(), point.uriId(), 0))));
+		}
+	}
+
+	private List<SeriesPoint> rawSeries(LocalDateTime from,
+	                                    LocalDateTime to,
+	                                    Collection<Integer> uriIds,
+	                                    Granularity granularity,
+	                                    boolean unique,
+	                                    Predicate<SeriesPoint> filter) {
+		String bucket = "date_trunc('" + switch (granularity) {
+			case MINUTE -> "minute";
+			case HOUR -> "hour";
+			case DAY -> "day";
+		} + "', timestamp)";
+		List<SeriesPoint> points = new ArrayList<>();
+		jdbcTemplate.query(
+				"SELECT " + bucket + " AS bucket, app_id, uri_id, " + (unique ? "COUNT(DISTINCT ip)" : "SUM(hits)") +
+				" AS hits FROM endpoint_hits WHERE timestamp >= :from AND timestamp < :to AND uri_id IN (:uriIds) " +
+				"GROUP BY " + bucket + ", app_id, uri_id ORDER BY " + bucket,
+				new MapSqlParameterSource("from", Timestamp.valueOf(from))
+						.addValue("to", Timestamp.valueOf(to))
+						.addValue("uriIds", uriIds),
+				rs -> {
+					SeriesPoint point = new SeriesPoint(rs.getTimestamp("bucket").toLocalDateTime(),
+							rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits"));
+					if (filter == null || filter.test(point)) {
+						points.add(point);
+					}
+				});
+		return points;
+	}
+
+	/**
+	 * Deletes the rollups of buckets starting before {@code before}, at every granularity.
+	 */
+	public void deleteBefore(LocalDateTime before) {
+		MapSqlParameterSource params = new MapSqlParameterSource("before", Timestamp.valueOf(before));
+		for (Granularity granularity : Granularity.values()) {
+			jdbcTemplate.update("DELETE FROM " + granularity.getRollupTable() + " WHERE bucket < :before", params);
+		}
+	}
+
+	/**
+	 * Computes the sketches of hour and day buckets in [from, to) that were rolled up before sketches
+	 * existed, from the raw hits, which must still be there. {@code from} must start a day.
+	 */
+	public void fillMissingSketches(LocalDateTime from, LocalDateTime to) {
+		for (LocalDateTime day = from; day.isBefore(to); day = day.plusDays(1)) {
+			MapSqlParameterSource params = new MapSqlParameterSource("from", Timestamp.valueOf(day))
+					.addValue("to", Timestamp.valueOf(day.plusDays(1)));
+			Boolean missing = jdbcTemplate.queryForObject(
+					"SELECT EXISTS (SELECT 1 FROM hit_rollup_hour WHERE bucket >= :from AND bucket < :to AND sketch IS NULL) " +
+					"OR EXISTS (SELECT 1 FROM hit_rollup_day WHERE bucket >= :from AND bucket < :to AND sketch IS NULL)",
+					params, Boolean.class);
+			if (!Boolean.TRUE.equals(missing)) {
+				continue;
+			}
+			Map<Granularity, Map<RollupKey, HyperLogLog>> sketches = new EnumMap<>(Granularity.class);
+			for (Granularity granularity : List.of(Granularity.HOUR, Granularity.DAY)) {
+				sketches.put(granularity, new TreeMap<>(KEY_ORDER));
+			}
+			jdbcTemplate.query(
+					"SELECT DISTINCT date_trunc('hour', timestamp) AS bucket, app_id, uri_id, ip FROM endpoint_hits " +
+					"WHERE timestamp >= :from AND timestamp < :to",
+					params,
+					rs -> {
+						long ipHash = Hashing.hash64(IpAddresses.normalize(rs.getString("ip")));
+						LocalDateTime bucket = rs.getTimestamp("bucket").toLocalDateTime();
+						int appId = rs.getInt("app_id");
+						int uriId = rs.getInt("uri_id");
+						sketches.forEach((granularity, byKey) -> byKey.computeIfAbsent(
+								new RollupKey(granularity.floor(bucket), appId, uriId),
+								key -> new HyperLogLog(sketchPrecision)).add(ipHash));
+					});
+			sketches.forEach((granularity, byKey) -> jdbcTemplate.batchUpdate(
+					"UPDATE " + granularity.getRollupTable() + " SET sketch = :sketch " +
+					"WHERE bucket = :bucket AND app_id = :appId AND uri_id = :uriId AND sketch IS NULL",
+					byKey.entrySet().stream()
+							.map(entry -> keyParams(entry.getKey()).addValue("sketch", entry.getValue().toBytes()))
+							.toArray(MapSqlParameterSource[]::new)));
+		}
+	}
+
+	private void mergeSketches(String table, Map<RollupKey, Rollup> rollups) {
+		List<RollupKey> keys = new ArrayList<>(rollups.keySet());
+		for (int from = 0; from < keys.size(); from += KEY_CHUNK_SIZE) {
+			List<RollupKey> chunk = keys.subList(from, Math.min(keys.size(), from + KEY_CHUNK_SIZE));
+			List<MapSqlParameterSource> updates = new ArrayList<>();
+			// Joining against unnested arrays plans in constant time, unlike thousands of OR-ed row comparisons.
+			jdbcTemplate.getJdbcOperations().query(
+					connection -> {
+						PreparedStatement statement = connection.prepareStatement(
+								"SELECT t.bucket, t.app_id, t.uri_id, t.sketch FROM " + table + " t " +
+								"JOIN unnest(?, ?, ?) AS k (bucket, app_id, uri_id) " +
+								"ON t.bucket = k.bucket AND t.app_id = k.app_id AND t.uri_id = k.uri_id");
+						statement.setArray(1, connection.createArrayOf("timestamp",
+								chunk.stream().map(key -> Timestamp.valueOf(key.bucket())).toArray()));
+						statement.setArray(2, connection.createArrayOf("int4", chunk.stream().map(RollupKey::appId).toArray()));
+						statement.setArray(3, connection.createArrayOf("int4", chunk.stream().map(RollupKey::uriId).toArray()));
+						return statement;
+					},
+					rs -> {
+						byte[] stored = rs.getBytes("sketch");
+						if (stored == null) {
+							return;
+						}
+						RollupKey key = new RollupKey(rs.getTimestamp("bucket").toLocalDateTime(), rs.getInt("app_id"), rs.getInt("uri_id"));
+						HyperLogLog merged = HyperLogLog.fromBytes(stored);
+						merged.merge(rollups.get(key).sketch);
+						byte[] mergedBytes = merged.toBytes();
+						// Rows inserted by this batch already hold its sketch, and merging is idempotent.
+						if (!Arrays.equals(stored, mergedBytes)) {
+							updates.add(keyParams(key).addValue("sketch", mergedBytes));
+						}
+					});
+			jdbcTemplate.batchUpdate(
+					"UPDATE " + table + " SET sketch = :sketch WHERE bucket = :bucket AND app_id = :appId AND uri_id = :uriId",
+					updates.toArray(MapSqlParameterSource[]::new));
+		}
+	}
+
+	private static String union(List<BucketRange> plan,
+	                            Collection<Integer> uriIds,
+	                            MapSqlParameterSource params,
+	                            Function<String, String> rollupSelect,
+	                            String rawSelect,
+	                            String rawSuffix) {
+		String uriFilter = uriIds == null ? "" : " AND uri_id IN (:uriIds)";
+		List<String> parts = new ArrayList<>();
+		for (int i = 0; i < plan.size(); i++) {
+			BucketRange range = plan.get(i);
+			params.addValue("from" + i, Timestamp.valueOf(range.from()));
+			params.addValue("to" + i, Timestamp.valueOf(range.to()));
+			if (range.isRaw()) {
+				parts.add(rawSelect + " WHERE timestamp >= :from" + i + " AND timestamp < :to" + i + uriFilter + rawSuffix);
+			} else {
+				parts.add(rollupSelect.apply(range.granularity().getRollupTable()) +
+						" WHERE bucket >= :from" + i + " AND bucket < :to" + i + uriFilter);
+			}
+		}
+		return String.join(" UNION ALL ", parts);
+	}
+
+	private static MapSqlParameterSource keyParams(RollupKey key) {
+		return new MapSqlParameterSource()
+				.addValue("bucket", Timestamp.valueOf(key.bucket()))
+				.addValue("appId", key.appId())
+				.addValue("uriId", key.uriId());
+	}
+
+	private record RollupKey(LocalDateTime bucket, int appId, int uriId) {
+	}
+
+	private static class Rollup {
+		private final HyperLogLog sketch;
+		private long hits;
+
+		Rollup(HyperLogLog sketch) {
+			this.sketch = sketch;
+		}
+
+		void add(long ipHash, int count) {
+			hits += count;
+			sketch.add(ipHash);
+		}
+	}
+
+	/**
+	 * Folds rows ordered by (app_id, uri_id) into one estimate per endpoint, keeping a single sketch in memory.
+	 */
+	private class SketchMerger {
+		private final List<EndpointCount> result;
+		private final Map<List<Integer>, HyperLogLog> unknown;
+		private HyperLogLog sketch;
+		private int appId;
+		private int uriId;
+		private boolean complete;
+
+		SketchMerger(List<EndpointCount> result, Map<List<Integer>, HyperLogLog> unknown) {
+			this.result = result;
+			this.unknown = unknown;
+		}
+
+		void accept(int rowAppId, int rowUriId, byte[] rowSketch, String rowIp) {
+			if (sketch == null || rowAppId != appId || rowUriId != uriId) {
+				finish();
+				appId = rowAppId;
+				uriId = rowUriId;
+				sketch = new HyperLogLog(sketchPrecision);
+				complete = true;
+			}
+			if (rowIp != null) {
+				// PostgreSQL prints some IPv6 forms differently, and sketches hash the canonical text.
+				sketch.add(Hashing.hash64(IpAddresses.normalize(rowIp)));
+			} else if (rowSketch != null) {
+				sketch.merge(HyperLogLog.fromBytes(rowSketch));
+			} else {
+				complete = false;
+			}
+		}
+
+		void finish() {
+			if (sketch == null) {
+				return;
+			}
+			if (complete) {
+				result.add(new EndpointCount(appId, uriId, sketch.estimate()));
+			} else {
+				unknown.put(List.of(appId, uriId), sketch);
+			}
+			sketch = null;
+		}
+	}
+}
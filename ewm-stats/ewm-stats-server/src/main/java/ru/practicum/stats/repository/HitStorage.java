@@ -0,0 +1,72 @@
+package ru.practicum.stats.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.TimeSeriesDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.Granularity;
+
+/**
+ * Storage engine for hits, selected with {@code stats.storage.type}: {@code jdbc} (PostgreSQL, the
+ * default) or {@code segment} (local append-only column files).
+ */
+public interface HitStorage {
+	/**
+	 * Stores all hits atomically; an exception thrown while iterating discards the whole batch.
+	 */
+	long write(Iterable<EndpointHitDto> hits);
+
+	/**
+	 * Same as {@link #write(Iterable)}, except that a batch with a key stored before is not written
+	 * again and -1 is returned instead. Storages that do not keep keys write every batch.
+	 */
+	default long write(Iterable<EndpointHitDto> hits, String batchKey) {
+		return write(hits);
+	}
+
+	/**
+	 * Counts hits, or distinct IPs when {@code unique} is set, per endpoint in the inclusive range,
+	 * ordered by count descending. {@code uris} is null to count every endpoint.
+	 */
+	List<ViewStatsDto> aggregate(LocalDateTime start,
+	                             LocalDateTime end,
+	                             Collection<String> uris,
+	                             boolean unique,
+	                             boolean approx);
+
+	/**
+	 * Counts hits, or distinct IPs when {@code unique} is set, of each endpoint with one of the uris per
+	 * bucket of the granularity in the inclusive range. Buckets are labelled with their start; the first
+	 * and last ones only count the part inside the range.
+	 */
+	List<TimeSeriesDto> timeSeries(LocalDateTime start,
+	                               LocalDateTime end,
+	                               Collection<String> uris,
+	                               Granularity granularity,
+	                               boolean unique,
+	                               boolean approx);
+
+	/**
+	 * Same counts as {@link #aggregate}, passed to the sink one at a time without building the whole
+	 * result first where the storage can avoid it. Unique counts may be exact instead of approximate.
+	 */
+	default void stream(LocalDateTime start,
+	                    LocalDateTime end,
+	                    Collection<String> uris,
+	                    boolean unique,
+	                    Consumer<ViewStatsDto> sink) {
+		aggregate(start, end, uris, unique, false).forEach(sink);
+	}
+
+	/**
+	 * Returns up to {@code k} endpoints with the most hits, or distinct IPs when {@code unique} is set,
+	 * most viewed first. Storages that keep heavy-hitter summaries may return estimated counts.
+	 */
+	default List<ViewStatsDto> top(LocalDateTime start, LocalDateTime end, int k, boolean unique, boolean approx) {
+		List<ViewStatsDto> all = aggregate(start, end, null, unique, approx);
+		return all.subList(0, Math.min(k, all.size()));
+	}
+}
@@ -0,0 +1,222 @@
+package ru.practicum.stats.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.model.BucketRange;
+import ru.practicum.stats.model.EncodedHit;
+import ru.practicum.stats.model.EndpointCount;
+import ru.practicum.stats.model.Granularity;
+import ru.practicum.stats.util.SpaceSaving;
+
+/**
+ * Keeps a Space-Saving summary of the most hit endpoints per hour and day bucket, so the top endpoints
+ * of a window are found by merging a few summaries instead of grouping every endpoint in it. Every
+ * write batch appends its own summaries as parts, so concurrent writers never wait for each other on a
+ * bucket row; the parts are folded into the bucket summaries every {@code fold-interval}, and read
+ * along with them until then.
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "jdbc", matchIfMissing = true)
+public class HitTopRepository {
+	private static final List<Granularity> GRANULARITIES = List.of(Granularity.HOUR, Granularity.DAY);
+	private static final int FOLD_BATCH = 1000;
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private final HitRollupRepository rollupRepository;
+	private final CompactionWatermark watermark;
+	private final int capacity;
+
+	public HitTopRepository(NamedParameterJdbcTemplate jdbcTemplate,
+	                        TransactionTemplate transactionTemplate,
+	                        HitRollupRepository rollupRepository,
+	                        CompactionWatermark watermark,
+	                        @Value("${stats.top.capacity:1000}") int capacity) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = transactionTemplate;
+		this.rollupRepository = rollupRepository;
+		this.watermark = watermark;
+		this.capacity = capacity;
+	}
+
+	public Summaries newSummaries() {
+		return new Summaries();
+	}
+
+	/**
+	 * Appends the batch summaries as parts of their buckets.
+	 */
+	public void save(Summaries summaries) {
+		summaries.buckets.forEach((granularity, buckets) -> jdbcTemplate.batchUpdate(
+				"INSERT INTO " + partsTable(granularity) + " (bucket, summary) VALUES (:bucket, :summary)",
+				buckets.entrySet().stream()
+						.map(bucket -> new MapSqlParameterSource("bucket", Timestamp.valueOf(bucket.getKey()))
+								.addValue("summary", bucket.getValue().toBytes()))
+						.toArray(MapSqlParameterSource[]::new)));
+	}
+
+	/**
+	 * Merges the parts into the bucket summaries, oldest first and {@link #FOLD_BATCH} per transaction.
+	 * Parts taken by a folder on another node are skipped.
+	 */
+	@Scheduled(fixedDelayString = "${stats.top.fold-interval:PT5S}")
+	public void fold() {
+		for (Granularity granularity : GRANULARITIES) {
+			while (Boolean.TRUE.equals(transactionTemplate.execute(status -> foldBatch(granularity)))) {
+				// A full batch was folded, so more parts may be waiting.
+			}
+		}
+	}
+
+	private boolean foldBatch(Granularity granularity) {
+		String parts = partsTable(granularity);
+		TreeMap<LocalDateTime, SpaceSaving> buckets = new TreeMap<>();
+		int[] folded = {0};
+		jdbcTemplate.query(
+				"DELETE FROM " + parts + " WHERE id IN " +
+				"(SELECT id FROM " + parts + " ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+				"RETURNING bucket, summary",
+				new MapSqlParameterSource("limit", FOLD_BATCH),
+				rs -> {
+					folded[0]++;
+					SpaceSaving part = SpaceSaving.fromBytes(rs.getBytes("summary"));
+					buckets.merge(rs.getTimestamp("bucket").toLocalDateTime(), part, (merged, next) -> {
+						merged.merge(next);
+						return merged;
+					});
+				});
+		if (!buckets.isEmpty()) {
+			merge(granularity.getTopTable(), buckets);
+		}
+		return folded[0] == FOLD_BATCH;
+	}
+
+	/**
+	 * Merges the summaries into the stored ones, locking the bucket rows in bucket order.
+	 */
+	private void merge(String table, TreeMap<LocalDateTime, SpaceSaving> buckets) {
+		List<LocalDateTime> keys = new ArrayList<>(buckets.keySet());
+		int[] inserted = jdbcTemplate.batchUpdate(
+				"INSERT INTO " + table + " (bucket, summary) VALUES (:bucket, :summary) ON CONFLICT (bucket) DO NOTHING",
+				keys.stream()
+						.map(bucket -> new MapSqlParameterSource("bucket", Timestamp.valueOf(bucket))
+								.addValue("summary", buckets.get(bucket).toBytes()))
+						.toArray(MapSqlParameterSource[]::new));
+		List<Timestamp> existing = new ArrayList<>();
+		for (int i = 0; i < keys.size(); i++) {
+			if (inserted[i] == 0) {
+				existing.add(Timestamp.valueOf(keys.get(i)));
+			}
+		}
+		if (existing.isEmpty()) {
+			return;
+		}
+		List<MapSqlParameterSource> updates = new ArrayList<>();
+		jdbcTemplate.query(
+				"SELECT bucket, summary FROM " + table + " WHERE bucket IN (:buckets) ORDER BY bucket FOR UPDATE",
+				new MapSqlParameterSource("buckets", existing),
+				rs -> {
+					LocalDateTime bucket = rs.getTimestamp("bucket").toLocalDateTime();
+					SpaceSaving merged = SpaceSaving.fromBytes(rs.getBytes("summary"));
+					merged.merge(buckets.get(bucket));
+					updates.add(new MapSqlParameterSource("bucket", rs.getTimestamp("bucket"))
+							.addValue("summary", merged.toBytes()));
+				});
+		jdbcTemplate.batchUpdate(
+				"UPDATE " + table + " SET summary = :summary WHERE bucket = :bucket",
+				updates.toArray(MapSqlParameterSource[]::new));
+	}
+
+	/**
+	 * Returns up to {@code k} endpoints with the most hits in the inclusive range [start, end], most hit
+	 * first. Counts are Space-Saving upper bounds: exact for the partial hours at the edges, which are
+	 * read from the minute rollups and raw hits, and for hours written before summaries existed. Before
+	 * the compaction cutoff the edges snap to whole hours.
+	 */
+	public List<EndpointCount> top(LocalDateTime start, LocalDateTime end, int k) {
+		SpaceSaving merged = new SpaceSaving(Math.max(capacity, k));
+		List<BucketRange> edges = new ArrayList<>();
+		for (BucketRange range : BucketRange.plan(start, end, watermark.get())) {
+			if (range.isRaw() || range.granularity().getTopTable() == null) {
+				edges.add(range);
+				continue;
+			}
+			String table = range.granularity().getTopTable();
+			String parts = partsTable(range.granularity());
+			MapSqlParameterSource params = new MapSqlParameterSource("from", Timestamp.valueOf(range.from()))
+					.addValue("to", Timestamp.valueOf(range.to()));
+			// One statement, so a part folded meanwhile is seen either as a part or in its bucket summary.
+			jdbcTemplate.query(
+					"SELECT summary FROM " + table + " WHERE bucket >= :from AND bucket < :to " +
+					"UNION ALL SELECT summary FROM " + parts + " WHERE bucket >= :from AND bucket < :to",
+					params,
+					rs -> {
+						merged.merge(SpaceSaving.fromBytes(rs.getBytes("summary")));
+					});
+			jdbcTemplate.query(
+					"SELECT app_id, uri_id, SUM(hits) AS hits FROM " + range.granularity().getRollupTable() + " r " +
+					"WHERE bucket >= :from AND bucket < :to " +
+					"AND NOT EXISTS (SELECT 1 FROM " + table + " t WHERE t.bucket = r.bucket) " +
+					"AND NOT EXISTS (SELECT 1 FROM " + parts + " p WHERE p.bucket = r.bucket) " +
+					"GROUP BY app_id, uri_id",
+					params,
+					rs -> {
+						merged.add(key(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getLong("hits"));
+					});
+		}
+		if (!edges.isEmpty()) {
+			rollupRepository.aggregate(edges, null)
+					.forEach(count -> merged.add(key(count.appId(), count.uriId()), count.hits()));
+		}
+		return merged.top(k).stream()
+				.map(counter -> new EndpointCount((int) (counter.getKey() >>> 32), (int) counter.getKey(), counter.getCount()))
+				.toList();
+	}
+
+	/**
+	 * Deletes the summaries of buckets starting before {@code before}, folded or not.
+	 */
+	public void deleteBefore(LocalDateTime before) {
+		MapSqlParameterSource params = new MapSqlParameterSource("before", Timestamp.valueOf(before));
+		for (Granularity granularity : GRANULARITIES) {
+			jdbcTemplate.update("DELETE FROM " + granularity.getTopTable() + " WHERE bucket < :before", params);
+			jdbcTemplate.update("DELETE FROM " + partsTable(granularity) + " WHERE bucket < :before", params);
+		}
+	}
+
+	private static String partsTable(Granularity granularity) {
+		return granularity.getTopTable() + "_parts";
+	}
+
+	private static long key(int appId, int uriId) {
+		return (long) appId << 32 | uriId & 0xffffffffL;
+	}
+
+	/**
+	 * Summaries of one write batch, kept until the batch is saved so each bucket gets one part.
+	 */
+	public class Summaries {
+		private final Map<Granularity, TreeMap<LocalDateTime, SpaceSaving>> buckets = new EnumMap<>(Granularity.class);
+
+		public void add(List<EncodedHit> hits) {
+			for (Granularity granularity : GRANULARITIES) {
+				TreeMap<LocalDateTime, SpaceSaving> summaries = buckets.computeIfAbsent(granularity, g -> new TreeMap<>());
+				for (EncodedHit hit : hits) {
+					summaries.computeIfAbsent(granularity.floor(hit.timestamp()), bucket -> new SpaceSaving(capacity))
+							.add(key(hit.appId(), hit.uriId()), hit.hits());
+				}
+			}
+		}
+	}
+}
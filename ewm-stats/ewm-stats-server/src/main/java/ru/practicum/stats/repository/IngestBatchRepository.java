@@ -0,0 +1,48 @@
+package ru.practicum.stats.repository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Idempotency keys of the hit batches stored so far, kept for {@code retention}.
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "jdbc", matchIfMissing = true)
+public class IngestBatchRepository {
+	private static final Logger log = LoggerFactory.getLogger(IngestBatchRepository.class);
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+	private final Duration retention;
+
+	public IngestBatchRepository(NamedParameterJdbcTemplate jdbcTemplate,
+	                             @Value("${stats.ingest.batch-keys.retention:7d}") Duration retention) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.retention = retention;
+	}
+
+	/**
+	 * Records the key in the current transaction; returns false if it was recorded before. A
+	 * concurrent transaction claiming the same key waits until this one ends.
+	 */
+	public boolean claim(String key) {
+		return jdbcTemplate.update(
+				"INSERT INTO stats_ingest_batches (batch_key, created) VALUES (:key, :created) ON CONFLICT DO NOTHING",
+				new MapSqlParameterSource("key", key).addValue("created", Timestamp.valueOf(LocalDateTime.now()))) == 1;
+	}
+
+	@Scheduled(cron = "${stats.ingest.batch-keys.cron:0 15 3 * * *}")
+	public void purge() {
+		int deleted = jdbcTemplate.update(
+				"DELETE FROM stats_ingest_batches WHERE created < :before",
+				new MapSqlParameterSource("before", Timestamp.valueOf(LocalDateTime.now().minus(retention))));
+		log.info("Purged {} expired ingest batch keys", deleted);
+	}
+}
@@ -0,0 +1,206 @@
+package ru.practicum.stats.repository;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.TimeSeriesDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.EncodedHit;
+import ru.practicum.stats.model.EndpointCount;
+import ru.practicum.stats.model.Granularity;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcHitStorage implements HitStorage {
+	private final EndpointHitRepository repository;
+	private final EndpointDictionary dictionary;
+	private final EndpointHitBulkLoader bulkLoader;
+	private final HitRollupRepository rollupRepository;
+	private final HitTopRepository topRepository;
+	private final CompactionWatermark watermark;
+	private final IngestBatchRepository batchRepository;
+	private final int copyChunkSize;
+	private final ChronoUnit coalesceUnit;
+	private final boolean rollupEnabled;
+
+	public JdbcHitStorage(EndpointHitRepository repository,
+	                      EndpointDictionary dictionary,
+	                      EndpointHitBulkLoader bulkLoader,
+	                      HitRollupRepository rollupRepository,
+	                      HitTopRepository topRepository,
+	                      CompactionWatermark watermark,
+	                      IngestBatchRepository batchRepository,
+	                      @Value("${stats.ingest.copy-chunk-size:5000}") int copyChunkSize,
+	                      @Value("${stats.ingest.coalesce.enabled:true}") boolean coalesceEnabled,
+	                      @Value("${stats.ingest.coalesce.unit:seconds}") ChronoUnit coalesceUnit,
+	                      @Value("${stats.rollup.enabled:true}") boolean rollupEnabled) {
+		this.repository = repository;
+		this.dictionary = dictionary;
+		this.bulkLoader = bulkLoader;
+		this.rollupRepository = rollupRepository;
+		this.topRepository = topRepository;
+		this.watermark = watermark;
+		this.batchRepository = batchRepository;
+		this.copyChunkSize = copyChunkSize;
+		this.coalesceUnit = coalesceEnabled ? coalesceUnit : null;
+		this.rollupEnabled = rollupEnabled;
+	}
+
+	@Override
+	@Transactional
+	public long write(Iterable<EndpointHitDto> hits) {
+		long written = 0;
+		HitTopRepository.Summaries top = topRepository.newSummaries();
+		List<EndpointHitDto> chunk = new ArrayList<>();
+		for (EndpointHitDto hit : hits) {
+			chunk.add(hit);
+			if (chunk.size() == copyChunkSize) {
+				written += writeChunk(chunk, top);
+				chunk.clear();
+			}
+		}
+		written += writeChunk(chunk, top);
+		topRepository.save(top);
+		return written;
+	}
+
+	@Override
+	@Transactional
+	public long write(Iterable<EndpointHitDto> hits, String batchKey) {
+		if (batchKey != null && !batchRepository.claim(batchKey)) {
+			return -1;
+		}
+		return write(hits);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<ViewStatsDto> aggregate(LocalDateTime start,
+	                                    LocalDateTime end,
+	                                    Collection<String> uris,
+	                                    boolean unique,
+	                                    boolean approx) {
+		List<Integer> uriIds = null;
+		if (uris != null) {
+			uriIds = dictionary.findUriIds(uris);
+			if (uriIds.isEmpty()) {
+				return List.of();
+			}
+		}
+		return dictionary.toViewStats(count(start, end, uriIds, unique, approx));
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<TimeSeriesDto> timeSeries(LocalDateTime start,
+	                                      LocalDateTime end,
+	                                      Collection<String> uris,
+	                                      Granularity granularity,
+	                                      boolean unique,
+	                                      boolean approx) {
+		List<Integer> uriIds = dictionary.findUriIds(uris);
+		if (uriIds.isEmpty()) {
+			return List.of();
+		}
+		boolean useRollups = rollupEnabled && (approx || !unique || watermark.covers(start));
+		return dictionary.toTimeSeries(rollupRepository.series(start, end, uriIds, granularity, unique, useRollups));
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public void stream(LocalDateTime start,
+	                   LocalDateTime end,
+	                   Collection<String> uris,
+	                   boolean unique,
+	                   Consumer<ViewStatsDto> sink) {
+		List<Integer> uriIds = null;
+		if (uris != null) {
+			uriIds = dictionary.findUriIds(uris);
+			if (uriIds.isEmpty()) {
+				return;
+			}
+		}
+		if (unique && rollupEnabled && watermark.covers(start)) {
+			// Exact unique counts need raw hits, which are gone from the compacted part.
+			dictionary.toViewStats(rollupRepository.aggregateUniqueApprox(start, end, uriIds)).forEach(sink);
+			return;
+		}
+		rollupRepository.stream(start, end, uriIds, unique, rollupEnabled, sink);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<ViewStatsDto> top(LocalDateTime start, LocalDateTime end, int k, boolean unique, boolean approx) {
+		if (!unique) {
+			return dictionary.toViewStats(topByHits(start, end, k));
+		}
+		// Distinct IPs are ranked over every endpoint, from the rollup sketches unless exact counts are asked for.
+		List<EndpointCount> counts = count(start, end, null, true, approx);
+		return dictionary.toViewStats(counts.subList(0, Math.min(k, counts.size())));
+	}
+
+	private List<EndpointCount> topByHits(LocalDateTime start, LocalDateTime end, int k) {
+		if (rollupEnabled) {
+			return topRepository.top(start, end, k);
+		}
+		List<EndpointCount> counts = repository.aggregateAll(start, end, null);
+		return counts.subList(0, Math.min(k, counts.size()));
+	}
+
+	private List<EndpointCount> count(LocalDateTime start,
+	                                  LocalDateTime end,
+	                                  List<Integer> uriIds,
+	                                  boolean unique,
+	                                  boolean approx) {
+		if (unique) {
+			// Exact unique counts need raw hits, which are gone from the compacted part.
+			if ((approx || watermark.covers(start)) && rollupEnabled) {
+				return rollupRepository.aggregateUniqueApprox(start, end, uriIds);
+			}
+			return repository.aggregateUnique(start, end, uriIds);
+		}
+		if (rollupEnabled) {
+			return rollupRepository.aggregate(start, end, uriIds);
+		}
+		return repository.aggregateAll(start, end, uriIds);
+	}
+
+	private long writeChunk(List<EndpointHitDto> chunk, HitTopRepository.Summaries top) {
+		if (chunk.isEmpty()) {
+			return 0;
+		}
+		List<EncodedHit> encoded = dictionary.encode(chunk);
+		if (coalesceUnit != null) {
+			encoded = coalesce(encoded);
+		}
+		bulkLoader.copy(encoded);
+		rollupRepository.increment(encoded);
+		top.add(encoded);
+		return chunk.size();
+	}
+
+	/**
+	 * Collapses hits of the same endpoint from the same ip within one coalesce unit into a single row
+	 * counting them, timestamped with the start of that unit.
+	 */
+	private List<EncodedHit> coalesce(List<EncodedHit> hits) {
+		Map<EncodedHit, Integer> counts = new LinkedHashMap<>();
+		for (EncodedHit hit : hits) {
+			EncodedHit key = new EncodedHit(hit.appId(), hit.uriId(), hit.ip(), hit.timestamp().truncatedTo(coalesceUnit), 0);
+			counts.merge(key, hit.hits(), Integer::sum);
+		}
+		List<EncodedHit> coalesced = new ArrayList<>(counts.size());
+		counts.forEach((key, count) -> coalesced.add(new EncodedHit(key.appId(), key.uriId(), key.ip(), key.timestamp(), count)));
+		return coalesced;
+	}
+}
@@ -0,0 +1,143 @@
+package ru.practicum.stats.repository.segment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Segment still being appended to. Rows live in growable primitive arrays and are also appended to a
+ * row-oriented log, which is replayed after a restart until the segment is sealed into a column file.
+ * Appends happen under the storage write lock; readers scan up to the row count they observed.
+ */
+class ActiveSegment implements HitColumns {
+	static final int RECORD_BYTES = 20;
+	private final long sequence;
+	private final Path logFile;
+	private final FileChannel log;
+	private long[] timestamps = new long[1024];
+	private long[] ips = new long[1024];
+	private int[] endpointIds = new int[1024];
+	private volatile int rows;
+	private long minTimestamp = Long.MAX_VALUE;
+	private long maxTimestamp = Long.MIN_VALUE;
+
+	private ActiveSegment(long sequence, Path logFile, FileChannel log) {
+		this.sequence = sequence;
+		this.logFile = logFile;
+		this.log = log;
+	}
+
+	/**
+	 * Opens the log for {@code sequence}, replaying the complete records it already holds.
+	 */
+	static ActiveSegment open(long sequence, Path logFile) throws IOException {
+		FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		ActiveSegment segment = new ActiveSegment(sequence, logFile, channel);
+		long complete = channel.size() / RECORD_BYTES * RECORD_BYTES;
+		ByteBuffer buffer = ByteBuffer.allocate((int) complete).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+			// keep reading until the complete records are in memory
+		}
+		buffer.flip();
+		while (buffer.remaining() >= RECORD_BYTES) {
+			segment.add(buffer.getLong(), buffer.getInt(), buffer.getLong());
+		}
+		// A torn record from a crash mid-append is dropped.
+		channel.truncate(complete);
+		channel.position(complete);
+		return segment;
+	}
+
+	long sequence() {
+		return sequence;
+	}
+
+	void append(ByteBuffer records, boolean fsync) throws IOException {
+		ByteBuffer view = records.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		while (view.hasRemaining()) {
+			log.write(view);
+		}
+		if (fsync) {
+			log.force(false);
+		}
+		while (records.hasRemaining()) {
+			add(records.getLong(), records.getInt(), records.getLong());
+		}
+	}
+
+	static void encode(ByteBuffer records, long timestamp, int endpointId, long ip) {
+		records.putLong(timestamp).putInt(endpointId).putLong(ip);
+	}
+
+	void copyColumns(ByteBuffer target) {
+		int count = rows;
+		for (int i = 0; i < count; i++) {
+			target.putLong(timestamps[i]);
+		}
+		for (int i = 0; i < count; i++) {
+			target.putLong(ips[i]);
+		}
+		for (int i = 0; i < count; i++) {
+			target.putInt(endpointIds[i]);
+		}
+	}
+
+	void delete() throws IOException {
+		log.close();
+		Files.deleteIfExists(logFile);
+	}
+
+	void close() throws IOException {
+		log.close();
+	}
+
+	@Override
+	public int rows() {
+		return rows;
+	}
+
+	@Override
+	public long minTimestamp() {
+		return minTimestamp;
+	}
+
+	@Override
+	public long maxTimestamp() {
+		return maxTimestamp;
+	}
+
+	@Override
+	public void scan(long from, long to, HitVisitor visitor) {
+		int count = rows;
+		long[] timestampColumn = timestamps;
+		long[] ipColumn = ips;
+		int[] endpointColumn = endpointIds;
+		for (int i = 0; i < count; i++) {
+			long timestamp = timestampColumn[i];
+			if (timestamp >= from && timestamp <= to) {
+				visitor.visit(timestamp, endpointColumn[i], ipColumn[i]);
+			}
+		}
+	}
+
+	private void add(long timestamp, int endpointId, long ip) {
+		int row = rows;
+		if (row == timestamps.length) {
+			int capacity = row * 2;
+			timestamps = Arrays.copyOf(timestamps, capacity);
+			ips = Arrays.copyOf(ips, capacity);
+			endpointIds = Arrays.copyOf(endpointIds, capacity);
+		}
+		timestamps[row] = timestamp;
+		ips[row] = ip;
+		endpointIds[row] = endpointId;
+		minTimestamp = Math.min(minTimestamp, timestamp);
+		maxTimestamp = Math.max(maxTimestamp, timestamp);
+		rows = row + 1;
+	}
+}
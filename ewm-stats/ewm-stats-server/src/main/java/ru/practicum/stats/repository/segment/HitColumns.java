@@ -0,0 +1,21 @@
+package ru.practicum.stats.repository.segment;
+
+/**
+ * Column-oriented run of hits: epoch-second timestamps, endpoint dictionary ids and IP keys.
+ */
+interface HitColumns {
+	int rows();
+
+	long minTimestamp();
+
+	long maxTimestamp();
+
+	/**
+	 * Visits the hits with {@code from <= timestamp <= to}.
+	 */
+	void scan(long from, long to, HitVisitor visitor);
+
+	default boolean overlaps(long from, long to) {
+		return rows() > 0 && minTimestamp() <= to && maxTimestamp() >= from;
+	}
+}
@@ -0,0 +1,6 @@
+package ru.practicum.stats.repository.segment;
+
+@FunctionalInterface
+public interface HitVisitor {
+	void visit(long timestamp, int endpointId, long ip);
+}
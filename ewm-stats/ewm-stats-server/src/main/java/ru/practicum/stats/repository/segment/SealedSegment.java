@@ -0,0 +1,98 @@
+package ru.practicum.stats.repository.segment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable memory-mapped segment file. Layout, little-endian: the timestamp column (8 bytes per
+ * row), the IP column (8 bytes per row), the endpoint id column (4 bytes per row), then a footer with
+ * the row count and the min/max timestamps, so that scans can skip the whole file.
+ */
+class SealedSegment implements HitColumns {
+	static final int MAGIC = 0x45574d53;
+	static final int VERSION = 1;
+	static final int FOOTER_BYTES = 28;
+	private final long sequence;
+	private final int rows;
+	private final long minTimestamp;
+	private final long maxTimestamp;
+	private final LongBuffer timestamps;
+	private final LongBuffer ips;
+	private final IntBuffer endpointIds;
+
+	private SealedSegment(long sequence, MappedByteBuffer map) {
+		this.sequence = sequence;
+		int footer = map.capacity() - FOOTER_BYTES;
+		if (map.getInt(footer + 24) != MAGIC || map.getInt(footer + 20) != VERSION) {
+			throw new IllegalStateException("Segment " + sequence + " has an unknown format");
+		}
+		this.rows = map.getInt(footer);
+		this.minTimestamp = map.getLong(footer + 4);
+		this.maxTimestamp = map.getLong(footer + 12);
+		this.timestamps = map.slice(0, rows * 8).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+		this.ips = map.slice(rows * 8, rows * 8).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+		this.endpointIds = map.slice(rows * 16, rows * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	}
+
+	static SealedSegment open(long sequence, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			return new SealedSegment(sequence, map);
+		}
+	}
+
+	static void write(Path file, ActiveSegment source) throws IOException {
+		int rows = source.rows();
+		ByteBuffer buffer = ByteBuffer.allocate(rows * 20 + FOOTER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		source.copyColumns(buffer);
+		buffer.putInt(rows)
+				.putLong(source.minTimestamp())
+				.putLong(source.maxTimestamp())
+				.putInt(VERSION)
+				.putInt(MAGIC)
+				.flip();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+	}
+
+	long sequence() {
+		return sequence;
+	}
+
+	@Override
+	public int rows() {
+		return rows;
+	}
+
+	@Override
+	public long minTimestamp() {
+		return minTimestamp;
+	}
+
+	@Override
+	public long maxTimestamp() {
+		return maxTimestamp;
+	}
+
+	@Override
+	public void scan(long from, long to, HitVisitor visitor) {
+		for (int i = 0; i < rows; i++) {
+			long timestamp = timestamps.get(i);
+			if (timestamp >= from && timestamp <= to) {
+				visitor.visit(timestamp, endpointIds.get(i), ips.get(i));
+			}
+		}
+	}
+}
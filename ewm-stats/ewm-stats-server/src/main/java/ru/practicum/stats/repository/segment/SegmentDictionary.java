@@ -0,0 +1,106 @@
+package ru.practicum.stats.repository.segment;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import ru.practicum.stats.util.StringIntMap;
+
+/**
+ * Append-only mapping of (app, uri) pairs to dense endpoint ids, persisted as a log of
+ * {@code writeUTF} pairs in id order. Mutated only under the storage write lock.
+ */
+class SegmentDictionary {
+	private final StringIntMap ids = new StringIntMap();
+	private final List<String> apps = new ArrayList<>();
+	private final List<String> uris = new ArrayList<>();
+	private final DataOutputStream log;
+
+	private SegmentDictionary(OutputStream log) {
+		this.log = new DataOutputStream(log);
+	}
+
+	static SegmentDictionary open(Path file) throws IOException {
+		List<String[]> entries = new ArrayList<>();
+		long complete = 0;
+		if (Files.exists(file)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				while (true) {
+					String app = in.readUTF();
+					String uri = in.readUTF();
+					entries.add(new String[]{app, uri});
+					complete += 4 + utfLength(app) + utfLength(uri);
+				}
+			} catch (EOFException ignored) {
+				// end of log, possibly after a torn entry
+			}
+			try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+				channel.truncate(complete);
+			}
+		}
+		SegmentDictionary dictionary = new SegmentDictionary(Files.newOutputStream(file,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+		for (String[] entry : entries) {
+			dictionary.register(entry[0], entry[1]);
+		}
+		return dictionary;
+	}
+
+	/**
+	 * Returns the id of the endpoint, assigning and logging a new one when it is unknown.
+	 */
+	int idOf(String app, String uri) throws IOException {
+		int id = ids.get(key(app, uri));
+		if (id != StringIntMap.MISSING) {
+			return id;
+		}
+		log.writeUTF(app);
+		log.writeUTF(uri);
+		log.flush();
+		return register(app, uri);
+	}
+
+	int size() {
+		return apps.size();
+	}
+
+	String app(int id) {
+		return apps.get(id);
+	}
+
+	String uri(int id) {
+		return uris.get(id);
+	}
+
+	void close() throws IOException {
+		log.close();
+	}
+
+	private int register(String app, String uri) {
+		int id = apps.size();
+		apps.add(app);
+		uris.add(uri);
+		ids.put(key(app, uri), id);
+		return id;
+	}
+
+	private static String key(String app, String uri) {
+		return app + '\n' + uri;
+	}
+
+	private static int utfLength(String value) {
+		int length = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			length += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+		}
+		return length;
+	}
+}
@@ -0,0 +1,278 @@
+package ru.practicum.stats.repository.segment;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.TimeSeriesDto;
+import ru.practicum.stats.dto.TimeSeriesPointDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.Granularity;
+import ru.practicum.stats.repository.HitStorage;
+import ru.practicum.stats.util.Hashing;
+import ru.practicum.stats.util.LongHashSet;
+
+/**
+ * Embedded storage without PostgreSQL: hits are appended to a log-backed active segment which is
+ * sealed into an immutable memory-mapped column file every {@code segment-rows} hits. Queries scan
+ * only the segments whose time range overlaps the request. Timestamps are kept with second
+ * precision and IPs as 64-bit hashes, so unique counts are exact up to hash collisions.
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "segment")
+public class SegmentHitStorage implements HitStorage {
+	private static final Logger log = LoggerFactory.getLogger(SegmentHitStorage.class);
+	private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d+)\\.col");
+	private static final Pattern ACTIVE_FILE = Pattern.compile("active-(\\d+)\\.log");
+	private final Path directory;
+	private final int segmentRows;
+	private final boolean fsync;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final List<SealedSegment> sealed = new ArrayList<>();
+	private SegmentDictionary dictionary;
+	private ActiveSegment active;
+
+	public SegmentHitStorage(@Value("${stats.storage.segment.dir:./data/segments}") Path directory,
+	                         @Value("${stats.storage.segment.segment-rows:1000000}") int segmentRows,
+	                         @Value("${stats.storage.segment.fsync:false}") boolean fsync) {
+		this.directory = directory;
+		this.segmentRows = segmentRows;
+		this.fsync = fsync;
+	}
+
+	@PostConstruct
+	public void open() throws IOException {
+		Files.createDirectories(directory);
+		dictionary = SegmentDictionary.open(directory.resolve("dictionary.log"));
+		TreeMap<Long, Path> segmentFiles = new TreeMap<>();
+		TreeMap<Long, Path> activeFiles = new TreeMap<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				String name = file.getFileName().toString();
+				Matcher segment = SEGMENT_FILE.matcher(name);
+				Matcher activeLog = ACTIVE_FILE.matcher(name);
+				if (segment.matches()) {
+					segmentFiles.put(Long.parseLong(segment.group(1)), file);
+				} else if (activeLog.matches()) {
+					activeFiles.put(Long.parseLong(activeLog.group(1)), file);
+				} else if (name.endsWith(".tmp")) {
+					Files.delete(file);
+				}
+			}
+		}
+		for (var entry : segmentFiles.entrySet()) {
+			sealed.add(SealedSegment.open(entry.getKey(), entry.getValue()));
+		}
+		long next = segmentFiles.isEmpty() ? 0 : segmentFiles.lastKey() + 1;
+		for (var entry : activeFiles.entrySet()) {
+			if (segmentFiles.containsKey(entry.getKey())) {
+				// Crashed after sealing but before the log was removed.
+				Files.delete(entry.getValue());
+				continue;
+			}
+			if (active != null) {
+				seal();
+			}
+			active = ActiveSegment.open(entry.getKey(), entry.getValue());
+			next = Math.max(next, entry.getKey() + 1);
+		}
+		if (active == null) {
+			active = ActiveSegment.open(next, activeLog(next));
+		}
+		log.info("Opened {} sealed segments and an active segment with {} hits in {}",
+				sealed.size(), active.rows(), directory);
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			active.close();
+			dictionary.close();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public long write(Iterable<EndpointHitDto> hits) {
+		List<EndpointHitDto> batch = new ArrayList<>();
+		hits.forEach(batch::add);
+		if (batch.isEmpty()) {
+			return 0;
+		}
+		lock.writeLock().lock();
+		try {
+			ByteBuffer records = ByteBuffer.allocate(batch.size() * ActiveSegment.RECORD_BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			for (EndpointHitDto hit : batch) {
+				ActiveSegment.encode(records,
+						hit.getTimestamp().toEpochSecond(ZoneOffset.UTC),
+						dictionary.idOf(hit.getApp(), hit.getUri()),
+						Hashing.hash64(hit.getIp()));
+			}
+			active.append(records.flip(), fsync);
+			if (active.rows() >= segmentRows) {
+				seal();
+				active = ActiveSegment.open(active.sequence() + 1, activeLog(active.sequence() + 1));
+			}
+			return batch.size();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<ViewStatsDto> aggregate(LocalDateTime start,
+	                                    LocalDateTime end,
+	                                    Collection<String> uris,
+	                                    boolean unique,
+	                                    boolean approx) {
+		long from = start.toEpochSecond(ZoneOffset.UTC);
+		long to = end.toEpochSecond(ZoneOffset.UTC);
+		lock.readLock().lock();
+		try {
+			int endpoints = dictionary.size();
+			// Endpoints of the same uri under different apps have ids of their own, so every id is looked up.
+			Set<String> wanted = uris == null ? null : new HashSet<>(uris);
+			boolean[] selected = new boolean[endpoints];
+			for (int id = 0; id < endpoints; id++) {
+				selected[id] = wanted == null || wanted.contains(dictionary.uri(id));
+			}
+			long[] hits = new long[endpoints];
+			List<LongHashSet> ips = new ArrayList<>();
+			for (int id = 0; id < endpoints; id++) {
+				ips.add(unique && selected[id] ? new LongHashSet() : null);
+			}
+			HitVisitor visitor = unique
+					? (timestamp, endpointId, ip) -> {
+						if (selected[endpointId]) {
+							ips.get(endpointId).add(ip);
+						}
+					}
+					: (timestamp, endpointId, ip) -> hits[endpointId]++;
+			for (SealedSegment segment : sealed) {
+				if (segment.overlaps(from, to)) {
+					segment.scan(from, to, visitor);
+				}
+			}
+			if (active.overlaps(from, to)) {
+				active.scan(from, to, visitor);
+			}
+			List<ViewStatsDto> result = new ArrayList<>();
+			for (int id = 0; id < endpoints; id++) {
+				long count = unique ? (selected[id] ? ips.get(id).size() : 0) : (selected[id] ? hits[id] : 0);
+				if (count > 0) {
+					result.add(new ViewStatsDto(dictionary.app(id), dictionary.uri(id), count));
+				}
+			}
+			result.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<TimeSeriesDto> timeSeries(LocalDateTime start,
+	                                      LocalDateTime end,
+	                                      Collection<String> uris,
+	                                      Granularity granularity,
+	                                      boolean unique,
+	                                      boolean approx) {
+		long from = start.toEpochSecond(ZoneOffset.UTC);
+		long to = end.toEpochSecond(ZoneOffset.UTC);
+		long width = granularity.getUnit().getDuration().getSeconds();
+		lock.readLock().lock();
+		try {
+			int endpoints = dictionary.size();
+			Set<String> wanted = new HashSet<>(uris);
+			List<TreeMap<Long, long[]>> hits = new ArrayList<>();
+			List<TreeMap<Long, LongHashSet>> ips = new ArrayList<>();
+			for (int id = 0; id < endpoints; id++) {
+				boolean selected = wanted.contains(dictionary.uri(id));
+				hits.add(selected && !unique ? new TreeMap<>() : null);
+				ips.add(selected && unique ? new TreeMap<>() : null);
+			}
+			HitVisitor visitor = unique
+					? (timestamp, endpointId, ip) -> {
+						if (ips.get(endpointId) != null) {
+							ips.get(endpointId).computeIfAbsent(timestamp - Math.floorMod(timestamp, width),
+									bucket -> new LongHashSet()).add(ip);
+						}
+					}
+					: (timestamp, endpointId, ip) -> {
+						if (hits.get(endpointId) != null) {
+							hits.get(endpointId).computeIfAbsent(timestamp - Math.floorMod(timestamp, width),
+									bucket -> new long[1])[0]++;
+						}
+					};
+			for (SealedSegment segment : sealed) {
+				if (segment.overlaps(from, to)) {
+					segment.scan(from, to, visitor);
+				}
+			}
+			if (active.overlaps(from, to)) {
+				active.scan(from, to, visitor);
+			}
+			List<TimeSeriesDto> result = new ArrayList<>();
+			for (int id = 0; id < endpoints; id++) {
+				List<TimeSeriesPointDto> points = new ArrayList<>();
+				if (unique && ips.get(id) != null) {
+					ips.get(id).forEach((bucket, set) -> points.add(new TimeSeriesPointDto(
+							LocalDateTime.ofEpochSecond(bucket, 0, ZoneOffset.UTC), set.size())));
+				} else if (!unique && hits.get(id) != null) {
+					hits.get(id).forEach((bucket, count) -> points.add(new TimeSeriesPointDto(
+							LocalDateTime.ofEpochSecond(bucket, 0, ZoneOffset.UTC), count[0])));
+				}
+				if (!points.isEmpty()) {
+					result.add(new TimeSeriesDto(dictionary.app(id), dictionary.uri(id), points));
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void seal() throws IOException {
+		long sequence = active.sequence();
+		Path target = directory.resolve(String.format("segment-%06d.col", sequence));
+		Path tmp = directory.resolve(target.getFileName() + ".tmp");
+		SealedSegment.write(tmp, active);
+		Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+		sealed.add(SealedSegment.open(sequence, target));
+		active.delete();
+		log.info("Sealed segment {} with {} hits", sequence, active.rows());
+	}
+
+	private Path activeLog(long sequence) {
+		return directory.resolve(String.format("active-%06d.log", sequence));
+	}
+}
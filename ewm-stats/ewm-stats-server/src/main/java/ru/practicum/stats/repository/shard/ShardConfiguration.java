@@ -0,0 +1,25 @@
+package ru.practicum.stats.repository.shard;
+
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import ru.practicum.stats.StatsServiceApplication;
+import ru.practicum.stats.repository.HitStorage;
+import ru.practicum.stats.service.HitCompactor;
+import ru.practicum.stats.service.HitPartitionManager;
+
+/**
+ * Application context of a single shard: the jdbc storage with its schema, partition maintenance and
+ * compaction, on the shard's datasource and without a web server.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableAutoConfiguration
+@AutoConfigurationPackage(basePackageClasses = StatsServiceApplication.class)
+@ComponentScan(basePackageClasses = HitStorage.class)
+@Import({HitPartitionManager.class, HitCompactor.class})
+@EnableScheduling
+class ShardConfiguration {
+}
@@ -0,0 +1,206 @@
+package ru.practicum.stats.repository.shard;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.TimeSeriesDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.Granularity;
+import ru.practicum.stats.repository.HitStorage;
+import ru.practicum.stats.util.HashRing;
+
+/**
+ * Spreads hits over several stats databases by a consistent hash of the uri. Every shard runs the
+ * jdbc storage in its own application context, configured like this one apart from the datasource
+ * url. An endpoint lives on exactly one shard, so per-shard counts, unique ones included, are merged
+ * by concatenation. Writes and queries run on all involved shards in parallel; a batch is atomic
+ * per shard only.
+ */
+@Repository
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "sharded")
+public class ShardedHitStorage implements HitStorage {
+	private static final Logger log = LoggerFactory.getLogger(ShardedHitStorage.class);
+	private static final Comparator<ViewStatsDto> HITS_DESC = Comparator.comparing(ViewStatsDto::getHits).reversed();
+	// Set for each shard context, so the same arguments given to this application are left out.
+	private static final Set<String> SHARD_PROPERTIES = Set.of(
+			"spring.profiles.active", "spring.main.web-application-type", "spring.datasource.url", "stats.storage.type");
+	private final ApplicationArguments arguments;
+	private final List<String> urls;
+	private final HashRing ring;
+	private final ExecutorService executor;
+	private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+	private final List<HitStorage> shards = new ArrayList<>();
+
+	public ShardedHitStorage(ApplicationArguments arguments,
+	                         @Value("${stats.storage.sharded.urls}") List<String> urls,
+	                         @Value("${stats.storage.sharded.virtual-nodes:128}") int virtualNodes) {
+		this.arguments = arguments;
+		this.urls = urls;
+		this.ring = new HashRing(urls.size(), virtualNodes);
+		this.executor = Executors.newFixedThreadPool(urls.size(), Thread.ofPlatform().name("stats-shard-", 0).daemon().factory());
+	}
+
+	@PostConstruct
+	public void open() {
+		try {
+			for (String url : urls) {
+				ConfigurableApplicationContext context = start(url);
+				contexts.add(context);
+				shards.add(context.getBean(HitStorage.class));
+				log.info("Opened shard {} at {}", shards.size() - 1, url);
+			}
+		} catch (RuntimeException ex) {
+			close();
+			throw ex;
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		executor.shutdown();
+		contexts.forEach(ConfigurableApplicationContext::close);
+	}
+
+	@Override
+	public long write(Iterable<EndpointHitDto> hits) {
+		return write(hits, null);
+	}
+
+	/**
+	 * Every shard keeps the keys of its own part of the batch, so a batch retried after some shards
+	 * stored their part is written only to the others.
+	 */
+	@Override
+	public long write(Iterable<EndpointHitDto> hits, String batchKey) {
+		List<List<EndpointHitDto>> batches = new ArrayList<>();
+		shards.forEach(shard -> batches.add(new ArrayList<>()));
+		for (EndpointHitDto hit : hits) {
+			batches.get(ring.nodeOf(hit.getUri())).add(hit);
+		}
+		List<Integer> targets = IntStream.range(0, shards.size()).filter(shard -> !batches.get(shard).isEmpty()).boxed().toList();
+		List<Long> written = scatter(targets, shard -> shards.get(shard).write(batches.get(shard), batchKey));
+		if (!written.isEmpty() && written.stream().allMatch(count -> count < 0)) {
+			return -1;
+		}
+		return written.stream().mapToLong(count -> Math.max(count, 0)).sum();
+	}
+
+	@Override
+	public List<ViewStatsDto> aggregate(LocalDateTime start,
+	                                    LocalDateTime end,
+	                                    Collection<String> uris,
+	                                    boolean unique,
+	                                    boolean approx) {
+		Map<Integer, List<String>> targets = route(uris);
+		List<ViewStatsDto> result = new ArrayList<>();
+		scatter(targets.keySet(), shard -> shards.get(shard).aggregate(start, end, targets.get(shard), unique, approx))
+				.forEach(result::addAll);
+		result.sort(HITS_DESC);
+		return result;
+	}
+
+	@Override
+	public List<TimeSeriesDto> timeSeries(LocalDateTime start,
+	                                      LocalDateTime end,
+	                                      Collection<String> uris,
+	                                      Granularity granularity,
+	                                      boolean unique,
+	                                      boolean approx) {
+		Map<Integer, List<String>> targets = route(uris);
+		List<TimeSeriesDto> result = new ArrayList<>();
+		scatter(targets.keySet(), shard -> shards.get(shard).timeSeries(start, end, targets.get(shard), granularity, unique, approx))
+				.forEach(result::addAll);
+		return result;
+	}
+
+	@Override
+	public List<ViewStatsDto> top(LocalDateTime start, LocalDateTime end, int k, boolean unique, boolean approx) {
+		List<ViewStatsDto> result = new ArrayList<>();
+		scatter(route(null).keySet(), shard -> shards.get(shard).top(start, end, k, unique, approx))
+				.forEach(result::addAll);
+		result.sort(HITS_DESC);
+		return result.subList(0, Math.min(k, result.size()));
+	}
+
+	/**
+	 * Groups the uris by the shard owning them; every shard gets a null filter when {@code uris} is null.
+	 */
+	private Map<Integer, List<String>> route(Collection<String> uris) {
+		Map<Integer, List<String>> targets = new TreeMap<>();
+		if (uris == null) {
+			for (int shard = 0; shard < shards.size(); shard++) {
+				targets.put(shard, null);
+			}
+			return targets;
+		}
+		for (String uri : uris) {
+			targets.computeIfAbsent(ring.nodeOf(uri), shard -> new ArrayList<>()).add(uri);
+		}
+		return targets;
+	}
+
+	private <T> List<T> scatter(Collection<Integer> targets, IntFunction<T> call) {
+		if (targets.size() == 1) {
+			return List.of(call.apply(targets.iterator().next()));
+		}
+		List<CompletableFuture<T>> futures = targets.stream()
+				.map(shard -> CompletableFuture.supplyAsync(() -> call.apply(shard), executor))
+				.toList();
+		List<T> results = new ArrayList<>(futures.size());
+		for (CompletableFuture<T> future : futures) {
+			try {
+				results.add(future.join());
+			} catch (CompletionException ex) {
+				if (ex.getCause() instanceof RuntimeException cause) {
+					throw cause;
+				}
+				throw ex;
+			}
+		}
+		return results;
+	}
+
+	private ConfigurableApplicationContext start(String url) {
+		List<String> args = new ArrayList<>();
+		for (String arg : arguments.getSourceArgs()) {
+			String name = arg.startsWith("--") ? arg.substring(2).split("=", 2)[0] : null;
+			if (!SHARD_PROPERTIES.contains(name)) {
+				args.add(arg);
+			}
+		}
+		args.add("--spring.profiles.active=");
+		args.add("--spring.main.web-application-type=none");
+		args.add("--spring.datasource.url=" + url);
+		args.add("--stats.storage.type=jdbc");
+		SpringApplication application = new SpringApplication(ShardConfiguration.class);
+		application.setWebApplicationType(WebApplicationType.NONE);
+		application.setBannerMode(Banner.Mode.OFF);
+		application.setLogStartupInfo(false);
+		application.setRegisterShutdownHook(false);
+		return application.run(args.toArray(String[]::new));
+	}
+}
@@ -0,0 +1,152 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.util.OverflowPolicy;
+import ru.practicum.stats.util.RingBuffer;
+
+/**
+ * Write-behind buffer for single hits: request threads only enqueue, and one drainer thread
+ * writes the queued hits in batches once {@code batch-size} hits are waiting or
+ * {@code flush-interval} has passed.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.ingest.buffer.enabled", havingValue = "true")
+public class HitBuffer implements SmartLifecycle {
+	private static final Logger log = LoggerFactory.getLogger(HitBuffer.class);
+	private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private final HitWriter writer;
+	private final RingBuffer<EndpointHitDto> ring;
+	private final int batchSize;
+	private final long flushIntervalNanos;
+	private final OverflowPolicy overflowPolicy;
+	private final Timer flushTimer;
+	private final Counter droppedCounter;
+	private final Counter rejectedCounter;
+	private final Counter failedCounter;
+	private volatile boolean running;
+	private volatile Thread drainer;
+
+	public HitBuffer(HitWriter writer,
+	                 MeterRegistry meterRegistry,
+	                 @Value("${stats.ingest.buffer.capacity:65536}") int capacity,
+	                 @Value("${stats.ingest.buffer.batch-size:1000}") int batchSize,
+	                 @Value("${stats.ingest.buffer.flush-interval:200ms}") Duration flushInterval,
+	                 @Value("${stats.ingest.buffer.overflow:BLOCK}") OverflowPolicy overflowPolicy) {
+		this.writer = writer;
+		this.ring = new RingBuffer<>(capacity);
+		this.batchSize = batchSize;
+		this.flushIntervalNanos = flushInterval.toNanos();
+		this.overflowPolicy = overflowPolicy;
+		Gauge.builder("stats.ingest.buffer.depth", ring, RingBuffer::size).register(meterRegistry);
+		this.flushTimer = Timer.builder("stats.ingest.buffer.flush").register(meterRegistry);
+		this.droppedCounter = Counter.builder("stats.ingest.buffer.dropped").register(meterRegistry);
+		this.rejectedCounter = Counter.builder("stats.ingest.buffer.rejected").register(meterRegistry);
+		this.failedCounter = Counter.builder("stats.ingest.buffer.failed").register(meterRegistry);
+	}
+
+	/**
+	 * Returns false only when the buffer is full and the overflow policy is REJECT.
+	 */
+	public boolean offer(EndpointHitDto hit) {
+		if (!ring.offer(hit)) {
+			switch (overflowPolicy) {
+				case DROP:
+					droppedCounter.increment();
+					return true;
+				case REJECT:
+					rejectedCounter.increment();
+					return false;
+				default:
+					while (!ring.offer(hit)) {
+						LockSupport.unpark(drainer);
+						LockSupport.parkNanos(BLOCK_PARK_NANOS);
+					}
+			}
+		}
+		if (ring.size() >= batchSize) {
+			LockSupport.unpark(drainer);
+		}
+		return true;
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		drainer = new Thread(this::drainLoop, "hit-buffer-drainer");
+		drainer.start();
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		Thread thread = drainer;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public int getPhase() {
+		// The web server stops in phase DEFAULT_PHASE - 2048; stopping in a lower phase, after it, lets hits
+		// accepted by in-flight requests be flushed on shutdown.
+		return SmartLifecycle.DEFAULT_PHASE - 4096;
+	}
+
+	private void drainLoop() {
+		List<EndpointHitDto> batch = new ArrayList<>(batchSize);
+		long lastFlush = System.nanoTime();
+		while (running) {
+			if (ring.size() >= batchSize || System.nanoTime() - lastFlush >= flushIntervalNanos) {
+				ring.drainTo(batch, batchSize);
+				flush(batch);
+				lastFlush = System.nanoTime();
+			} else {
+				LockSupport.parkNanos(this, flushIntervalNanos - (System.nanoTime() - lastFlush));
+			}
+		}
+		while (ring.drainTo(batch, batchSize) > 0) {
+			flush(batch);
+		}
+		log.info("Hit buffer drained on shutdown");
+	}
+
+	private void flush(List<EndpointHitDto> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		long started = System.nanoTime();
+		try {
+			writer.write(batch);
+		} catch (RuntimeException ex) {
+			failedCounter.increment(batch.size());
+			log.error("Failed to flush {} buffered hits", batch.size(), ex);
+		} finally {
+			flushTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+			batch.clear();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package ru.practicum.stats.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.model.Granularity;
+import ru.practicum.stats.repository.CompactionRepository;
+import ru.practicum.stats.repository.CompactionWatermark;
+import ru.practicum.stats.repository.EndpointHitPartitionRepository;
+import ru.practicum.stats.repository.HitRollupRepository;
+
+/**
+ * Deletes raw hits and minute rollups older than {@code raw-age}, leaving the hour and day rollups
+ * with their sketches as the only record of that period. Each run first announces a new cutoff,
+ * which every node picks up within {@code refresh-interval}, and then deletes up to the cutoff
+ * announced by the previous run, so no node still reads raw hits while they are deleted.
+ */
+@Service
+@ConditionalOnExpression("'${stats.storage.type:jdbc}' == 'jdbc' and ${stats.compaction.enabled:false}")
+public class HitCompactor {
+	private static final Logger log = LoggerFactory.getLogger(HitCompactor.class);
+	private final CompactionRepository repository;
+	private final CompactionWatermark watermark;
+	private final EndpointHitPartitionRepository partitionRepository;
+	private final HitRollupRepository rollupRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final Duration rawAge;
+	private final boolean rollupEnabled;
+
+	public HitCompactor(CompactionRepository repository,
+	                    CompactionWatermark watermark,
+	                    EndpointHitPartitionRepository partitionRepository,
+	                    HitRollupRepository rollupRepository,
+	                    TransactionTemplate transactionTemplate,
+	                    @Value("${stats.compaction.raw-age:90d}") Duration rawAge,
+	                    @Value("${stats.rollup.enabled:true}") boolean rollupEnabled) {
+		this.repository = repository;
+		this.watermark = watermark;
+		this.partitionRepository = partitionRepository;
+		this.rollupRepository = rollupRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.rawAge = rawAge;
+		this.rollupEnabled = rollupEnabled;
+	}
+
+	@Scheduled(cron = "${stats.compaction.cron:0 30 * * * *}")
+	public void compact() {
+		if (!rollupEnabled) {
+			log.warn("Rollups are disabled, so raw hits are the only record of them; skipping compaction");
+			return;
+		}
+		LocalDateTime cutoff = Granularity.HOUR.floor(LocalDateTime.now().minus(rawAge));
+		CompactionRepository.State state = transactionTemplate.execute(status -> {
+			partitionRepository.lockMaintenance();
+			CompactionRepository.State current = repository.find();
+			repository.announce(cutoff);
+			return current;
+		});
+		watermark.refresh();
+		LocalDateTime before = state.announcedBefore();
+		if (before == null || state.compactedBefore() != null && !before.isAfter(state.compactedBefore())) {
+			return;
+		}
+		LocalDateTime oldest = repository.findOldestRawBefore(before);
+		long deleted = 0;
+		LocalDateTime from = oldest == null ? before : oldest.truncatedTo(ChronoUnit.DAYS);
+		while (from.isBefore(before)) {
+			deleted += compactRaw(from, before);
+			from = nextChunk(from, before);
+		}
+		transactionTemplate.executeWithoutResult(status -> {
+			partitionRepository.lockMaintenance();
+			repository.deleteMinuteRollupsBefore(before);
+			repository.markCompacted(before);
+		});
+		log.info("Compacted hits before {}; {} raw rows deleted outside dropped partitions", before, deleted);
+	}
+
+	/**
+	 * Deletes the raw hits of the chunk starting at {@code from}: a whole monthly partition when the
+	 * month ends before the cutoff and has its own partition, otherwise one day. Returns the number of
+	 * rows deleted one by one.
+	 */
+	private long compactRaw(LocalDateTime from, LocalDateTime before) {
+		LocalDateTime to = nextChunk(from, before);
+		YearMonth month = YearMonth.from(from);
+		Long deleted = transactionTemplate.execute(status -> {
+			partitionRepository.lockMaintenance();
+			rollupRepository.fillMissingSketches(from, to);
+			if (isWholePartition(from, to)) {
+				partitionRepository.dropMonthlyPartition(month);
+				log.info("Dropped endpoint_hits partition for {} after compaction", month);
+				return 0L;
+			}
+			return (long) repository.deleteRaw(from, to);
+		});
+		return deleted == null ? 0 : deleted;
+	}
+
+	private LocalDateTime nextChunk(LocalDateTime from, LocalDateTime before) {
+		LocalDateTime monthEnd = YearMonth.from(from).plusMonths(1).atDay(1).atStartOfDay();
+		if (isWholePartition(from, monthEnd) && !monthEnd.isAfter(before)) {
+			return monthEnd;
+		}
+		LocalDateTime dayEnd = from.plusDays(1);
+		return dayEnd.isAfter(before) ? before : dayEnd;
+	}
+
+	private boolean isWholePartition(LocalDateTime from, LocalDateTime to) {
+		YearMonth month = YearMonth.from(from);
+		return from.equals(month.atDay(1).atStartOfDay())
+				&& to.equals(month.plusMonths(1).atDay(1).atStartOfDay())
+				&& partitionRepository.findMonthlyPartitions().contains(month);
+	}
+}
@@ -0,0 +1,89 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.TreeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.repository.EndpointHitPartitionRepository;
+import ru.practicum.stats.repository.HitRollupRepository;
+import ru.practicum.stats.repository.HitTopRepository;
+
+/**
+ * Keeps endpoint_hits partitioned by month: creates partitions for the coming months and for months
+ * that ended up in the default partition, and drops whole partitions past the retention period.
+ * Rollups and top summaries of the dropped months go with them, so that counts answered from them
+ * agree with counts answered from raw hits.
+ */
+@Service
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "jdbc", matchIfMissing = true)
+public class HitPartitionManager {
+	private static final Logger log = LoggerFactory.getLogger(HitPartitionManager.class);
+	private final EndpointHitPartitionRepository repository;
+	private final HitRollupRepository rollupRepository;
+	private final HitTopRepository topRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final int monthsAhead;
+	private final int retentionMonths;
+
+	public HitPartitionManager(EndpointHitPartitionRepository repository,
+	                           HitRollupRepository rollupRepository,
+	                           HitTopRepository topRepository,
+	                           TransactionTemplate transactionTemplate,
+	                           @Value("${stats.partition.months-ahead:3}") int monthsAhead,
+	                           @Value("${stats.partition.retention-months:0}") int retentionMonths) {
+		this.repository = repository;
+		this.rollupRepository = rollupRepository;
+		this.topRepository = topRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.monthsAhead = monthsAhead;
+		this.retentionMonths = retentionMonths;
+	}
+
+	@PostConstruct
+	@Scheduled(cron = "${stats.partition.cron:0 0 3 * * *}")
+	public void maintain() {
+		if (!repository.isPartitioned()) {
+			if (retentionMonths > 0) {
+				// Expired hits could only be dropped with partitions, so retention would silently not apply.
+				throw new IllegalStateException("endpoint_hits is not a partitioned table, but stats.partition.retention-months is set");
+			}
+			log.warn("endpoint_hits is not a partitioned table, skipping partition maintenance");
+			return;
+		}
+		transactionTemplate.executeWithoutResult(status -> {
+			repository.lockMaintenance();
+			repository.createDefaultPartition();
+			YearMonth current = YearMonth.now();
+			YearMonth oldestKept = retentionMonths > 0 ? current.minusMonths(retentionMonths) : null;
+			List<YearMonth> existing = repository.findMonthlyPartitions();
+			TreeSet<YearMonth> wanted = new TreeSet<>(repository.findMonthsInDefaultPartition());
+			for (int i = 0; i <= monthsAhead; i++) {
+				wanted.add(current.plusMonths(i));
+			}
+			for (YearMonth month : wanted) {
+				if (!existing.contains(month) && (oldestKept == null || !month.isBefore(oldestKept))) {
+					repository.createMonthlyPartition(month);
+					log.info("Created endpoint_hits partition for {}", month);
+				}
+			}
+			if (oldestKept != null) {
+				repository.deleteFromDefaultPartitionBefore(oldestKept);
+				for (YearMonth month : existing) {
+					if (month.isBefore(oldestKept)) {
+						repository.dropMonthlyPartition(month);
+						log.info("Dropped endpoint_hits partition for {}", month);
+					}
+				}
+				rollupRepository.deleteBefore(oldestKept.atDay(1).atStartOfDay());
+				topRepository.deleteBefore(oldestKept.atDay(1).atStartOfDay());
+			}
+		});
+	}
+}
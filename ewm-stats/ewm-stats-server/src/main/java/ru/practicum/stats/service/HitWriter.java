@@ -0,0 +1,55 @@
+package ru.practicum.stats.service;
+
+import java.util.Iterator;
+import org.springframework.stereotype.Service;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.repository.HitStorage;
+
+@Service
+public class HitWriter {
+	private final HitStorage storage;
+	private final IngestWatermark watermark;
+	private final LiveCounters liveCounters;
+
+	public HitWriter(HitStorage storage, IngestWatermark watermark, LiveCounters liveCounters) {
+		this.storage = storage;
+		this.watermark = watermark;
+		this.liveCounters = liveCounters;
+	}
+
+	public long write(Iterable<EndpointHitDto> hits) {
+		return write(hits, null);
+	}
+
+	/**
+	 * Returns -1 without writing anything when a batch with the same key was written before.
+	 */
+	public long write(Iterable<EndpointHitDto> hits, String batchKey) {
+		IngestWatermark.Tracker tracker = watermark.tracker();
+		LiveCounters.Pending live = liveCounters.pending();
+		// The hits may be a one-pass stream, so they are tracked while the storage reads them.
+		long written = storage.write(() -> {
+			Iterator<EndpointHitDto> source = hits.iterator();
+			return new Iterator<>() {
+				@Override
+				public boolean hasNext() {
+					return source.hasNext();
+				}
+
+				@Override
+				public EndpointHitDto next() {
+					EndpointHitDto hit = source.next();
+					tracker.accept(hit);
+					live.add(hit);
+					return hit;
+				}
+			};
+		}, batchKey);
+		tracker.advance();
+		if (written >= 0) {
+			// Only once stored, so a batch rolled back or already written before is not counted.
+			liveCounters.record(live);
+		}
+		return written;
+	}
+}
@@ -0,0 +1,104 @@
+package ru.practicum.stats.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.util.Hashing;
+
+/**
+ * Tracks what has been written per uri: a version that grows with every committed write touching the
+ * uri and the latest hit timestamp written for it. Uris are hashed into a fixed number of stripes, so
+ * a write may also advance uris sharing its stripe, which only makes readers more cautious. The last
+ * stripe stands for all uris. Latest timestamps start at the startup time, as hits written earlier
+ * are assumed not to be dated in the future.
+ */
+@Component
+public class IngestWatermark {
+	private static final int STRIPES = 1024;
+	private static final int ALL = STRIPES;
+	private final AtomicLongArray versions = new AtomicLongArray(STRIPES + 1);
+	private final AtomicLongArray latest = new AtomicLongArray(STRIPES + 1);
+
+	public IngestWatermark() {
+		long now = toMicros(LocalDateTime.now());
+		for (int i = 0; i <= STRIPES; i++) {
+			latest.set(i, now);
+		}
+	}
+
+	/**
+	 * Reads the watermark of the uris, or of all uris when {@code uris} is null. Readers must take it
+	 * before querying the storage, so that anything written afterwards is seen as newer.
+	 */
+	public Snapshot snapshot(Collection<String> uris) {
+		if (uris == null) {
+			return new Snapshot(versions.get(ALL), latest.get(ALL));
+		}
+		BitSet stripes = new BitSet(STRIPES);
+		for (String uri : uris) {
+			stripes.set(stripe(uri));
+		}
+		// Versions only grow, so the sum changes whenever any of them does.
+		long version = 0;
+		long latestMicros = Long.MIN_VALUE;
+		for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+			version += versions.get(i);
+			latestMicros = Math.max(latestMicros, latest.get(i));
+		}
+		return new Snapshot(version, latestMicros);
+	}
+
+	/**
+	 * Returns a tracker to pass each hit of a write through; its {@link Tracker#advance} must be called
+	 * once the write has been committed.
+	 */
+	public Tracker tracker() {
+		return new Tracker();
+	}
+
+	private static int stripe(String uri) {
+		return (int) (Hashing.mix(uri.hashCode()) & (STRIPES - 1));
+	}
+
+	private static long toMicros(LocalDateTime time) {
+		return ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), time);
+	}
+
+	/**
+	 * @param latestMicros latest hit timestamp written for any of the uris, in microseconds since the epoch
+	 */
+	public record Snapshot(long version, long latestMicros) {
+		/**
+		 * Whether no hit known to this snapshot is dated after the given time.
+		 */
+		public boolean isAtOrAfterLatest(LocalDateTime time) {
+			return toMicros(time) >= latestMicros;
+		}
+	}
+
+	public class Tracker {
+		private final BitSet stripes = new BitSet(STRIPES);
+		private long latestMicros = Long.MIN_VALUE;
+
+		public void accept(EndpointHitDto hit) {
+			stripes.set(stripe(hit.getUri()));
+			latestMicros = Math.max(latestMicros, toMicros(hit.getTimestamp()));
+		}
+
+		public void advance() {
+			if (stripes.isEmpty()) {
+				return;
+			}
+			stripes.set(ALL);
+			for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+				latest.accumulateAndGet(i, latestMicros, Math::max);
+				versions.incrementAndGet(i);
+			}
+		}
+	}
+}
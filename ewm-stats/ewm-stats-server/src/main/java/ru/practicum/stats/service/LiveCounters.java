@@ -0,0 +1,186 @@
+package ru.practicum.stats.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.LiveStatsDto;
+
+/**
+ * Hits per uri over the last 1, 5 and 60 minutes, held in memory for /stats/live. Each uri keeps the
+ * ten-second slots of the last hour in which it was hit, so the windows end with the current, partly
+ * elapsed slot, and a uri hit once costs a few dozen bytes. Uris are spread over lock stripes, so
+ * writers of different uris rarely wait for each other; each stripe holds at most its share of
+ * {@code max-uris} and drops its least recently used uri beyond that. Counts cover the hits written
+ * through this node only; hits timestamped more than an hour ago are left out.
+ */
+@Component
+public class LiveCounters {
+	private static final int SLOT_SECONDS = 10;
+	private static final int SLOTS = 3600 / SLOT_SECONDS;
+	private static final int STRIPES = 64;
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	public LiveCounters(@Value("${stats.live.max-uris:100000}") int maxUris) {
+		int perStripe = Math.max(1, maxUris / STRIPES);
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe(perStripe);
+		}
+	}
+
+	/**
+	 * Starts collecting the hits of a write, to be counted by {@link #record(Pending)} once it is stored.
+	 */
+	public Pending pending() {
+		return new Pending();
+	}
+
+	public void record(Pending pending) {
+		long now = currentSlot();
+		pending.counts.forEach((uri, slots) -> {
+			Stripe stripe = stripeOf(uri);
+			synchronized (stripe) {
+				Window window = stripe.windows.computeIfAbsent(uri, key -> new Window());
+				slots.forEach((slot, count) -> {
+					if (slot > now - SLOTS) {
+						window.add(Math.min(slot, now), now, count);
+					}
+				});
+			}
+		});
+	}
+
+	public List<LiveStatsDto> get(Collection<String> uris) {
+		long now = currentSlot();
+		List<LiveStatsDto> result = new ArrayList<>(uris.size());
+		for (String uri : uris) {
+			Stripe stripe = stripeOf(uri);
+			synchronized (stripe) {
+				Window window = stripe.windows.get(uri);
+				result.add(window == null
+						? new LiveStatsDto(uri, 0, 0, 0)
+						: new LiveStatsDto(uri, window.sum(now, 60 / SLOT_SECONDS), window.sum(now, 300 / SLOT_SECONDS), window.sum(now, SLOTS)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Drops the uris without hits in the last hour.
+	 */
+	@Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+	public void evict() {
+		long now = currentSlot();
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.windows.values().removeIf(window -> window.latest <= now - SLOTS);
+			}
+		}
+	}
+
+	private Stripe stripeOf(String uri) {
+		return stripes[Math.floorMod(uri.hashCode(), STRIPES)];
+	}
+
+	private static long currentSlot() {
+		return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) / SLOT_SECONDS;
+	}
+
+	/**
+	 * Hits of one write by uri and slot.
+	 */
+	public static class Pending {
+		private final Map<String, Map<Long, Long>> counts = new HashMap<>();
+		private final long started = currentSlot();
+
+		public void add(EndpointHitDto hit) {
+			long slot = hit.getTimestamp().toEpochSecond(ZoneOffset.UTC) / SLOT_SECONDS;
+			if (slot <= started - SLOTS) {
+				return;
+			}
+			counts.computeIfAbsent(hit.getUri(), uri -> new HashMap<>()).merge(slot, 1L, Long::sum);
+		}
+	}
+
+	private static class Stripe {
+		private final Map<String, Window> windows;
+
+		Stripe(int maxUris) {
+			this.windows = new LinkedHashMap<>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Window> eldest) {
+					return size() > maxUris;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Slots with hits in ascending order, pruned to the last hour whenever the arrays fill up.
+	 */
+	private static class Window {
+		private long[] slots = new long[4];
+		private long[] hits = new long[4];
+		private int size;
+		private long latest;
+
+		void add(long slot, long now, long count) {
+			latest = Math.max(latest, slot);
+			if (size > 0 && slots[size - 1] == slot) {
+				hits[size - 1] += count;
+				return;
+			}
+			int index = Arrays.binarySearch(slots, 0, size, slot);
+			if (index >= 0) {
+				hits[index] += count;
+				return;
+			}
+			if (size == slots.length) {
+				int expired = expired(now);
+				if (expired > 0) {
+					System.arraycopy(slots, expired, slots, 0, size - expired);
+					System.arraycopy(hits, expired, hits, 0, size - expired);
+					size -= expired;
+				} else {
+					slots = Arrays.copyOf(slots, Math.min(SLOTS, size * 2));
+					hits = Arrays.copyOf(hits, slots.length);
+				}
+				index = Arrays.binarySearch(slots, 0, size, slot);
+			}
+			int at = -index - 1;
+			System.arraycopy(slots, at, slots, at + 1, size - at);
+			System.arraycopy(hits, at, hits, at + 1, size - at);
+			slots[at] = slot;
+			hits[at] = count;
+			size++;
+		}
+
+		long sum(long now, int count) {
+			long total = 0;
+			for (int i = size - 1; i >= 0 && slots[i] > now - count; i--) {
+				if (slots[i] <= now) {
+					total += hits[i];
+				}
+			}
+			return total;
+		}
+
+		private int expired(long now) {
+			int expired = 0;
+			while (expired < size && slots[expired] <= now - SLOTS) {
+				expired++;
+			}
+			return expired;
+		}
+	}
+}
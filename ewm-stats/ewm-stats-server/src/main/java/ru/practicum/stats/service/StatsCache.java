@@ -0,0 +1,113 @@
+package ru.practicum.stats.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.Granularity;
+import ru.practicum.stats.repository.CompactionWatermark;
+
+/**
+ * Least recently used cache of /stats answers, bounded by the total number of rows it holds.
+ *
+ * <p>Keys round the end of the range up to the minute, so requests ending "now" a few seconds apart
+ * share an entry. An entry answers a request with a different end in the same minute only when no
+ * hit for its uris has been written since it was computed and no known hit is dated after either
+ * end, which makes both ranges count the same hits. Any write touching one of its uris makes the
+ * entry stale, and it is recomputed on the next request.
+ *
+ * <p>Only writes through this node are seen that way, so entries also expire after {@code ttl}, which
+ * bounds how long hits written by other nodes or moved by compaction go unnoticed. Entries computed
+ * before the compaction watermark last moved are stale as well, since the same range may then be
+ * read from other rollups.
+ */
+@Component
+public class StatsCache {
+	private final IngestWatermark watermark;
+	private final CompactionWatermark compaction;
+	private final boolean enabled;
+	private final long ttlNanos;
+	private final long maxRows;
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long rows;
+
+	public StatsCache(IngestWatermark watermark,
+	                  ObjectProvider<CompactionWatermark> compaction,
+	                  @Value("${stats.cache.enabled:true}") boolean enabled,
+	                  @Value("${stats.cache.ttl:30s}") Duration ttl,
+	                  @Value("${stats.cache.max-rows:100000}") long maxRows) {
+		this.watermark = watermark;
+		this.compaction = compaction.getIfAvailable();
+		this.enabled = enabled;
+		this.ttlNanos = ttl.toNanos();
+		this.maxRows = maxRows;
+	}
+
+	public List<ViewStatsDto> get(LocalDateTime start,
+	                              LocalDateTime end,
+	                              Collection<String> uris,
+	                              boolean unique,
+	                              boolean approx,
+	                              Supplier<List<ViewStatsDto>> loader) {
+		if (!enabled) {
+			return loader.get();
+		}
+		Key key = new Key(start, Granularity.MINUTE.ceil(end), uris == null ? null : List.copyOf(new TreeSet<>(uris)),
+				unique, approx);
+		IngestWatermark.Snapshot snapshot = watermark.snapshot(uris);
+		LocalDateTime compactedBefore = compaction == null ? null : compaction.get();
+		long now = System.nanoTime();
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry != null && now - entry.expires < 0 && Objects.equals(entry.compactedBefore, compactedBefore)
+				&& entry.answers(end, snapshot)) {
+			return entry.result;
+		}
+		List<ViewStatsDto> result = List.copyOf(loader.get());
+		if (result.size() >= maxRows) {
+			return result;
+		}
+		synchronized (entries) {
+			Entry previous = entries.put(key, new Entry(end, snapshot, compactedBefore, now + ttlNanos, result));
+			rows += result.size() + 1;
+			if (previous != null) {
+				rows -= previous.result.size() + 1;
+			}
+			Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+			while (rows > maxRows && eldest.hasNext()) {
+				rows -= eldest.next().getValue().result.size() + 1;
+				eldest.remove();
+			}
+		}
+		return result;
+	}
+
+	private record Key(LocalDateTime start, LocalDateTime endBucket, List<String> uris, boolean unique, boolean approx) {
+	}
+
+	private record Entry(LocalDateTime end,
+	                     IngestWatermark.Snapshot snapshot,
+	                     LocalDateTime compactedBefore,
+	                     long expires,
+	                     List<ViewStatsDto> result) {
+		boolean answers(LocalDateTime requestEnd, IngestWatermark.Snapshot current) {
+			if (current.version() != snapshot.version()) {
+				return false;
+			}
+			return requestEnd.equals(end)
+					|| snapshot.isAtOrAfterLatest(requestEnd) && snapshot.isAtOrAfterLatest(end);
+		}
+	}
+}
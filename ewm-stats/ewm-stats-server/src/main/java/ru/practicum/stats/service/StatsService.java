@@ -1,43 +1,160 @@
 package ru.practicum.stats.service;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import jakarta.validation.Validator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.LiveStatsDto;
+import ru.practicum.stats.dto.TimeSeriesDto;
 import ru.practicum.stats.dto.ViewStatsDto;
-import ru.practicum.stats.model.EndpointHit;
-import ru.practicum.stats.repository.EndpointHitRepository;
+import ru.practicum.stats.model.Granularity;
+import ru.practicum.stats.repository.HitStorage;
+import ru.practicum.stats.util.IpAddresses;
 
 @Service
 public class StatsService {
-	private final EndpointHitRepository repository;
+	private final HitStorage storage;
+	private final HitWriter writer;
+	private final HitBuffer buffer;
+	private final StatsCache cache;
+	private final LiveCounters liveCounters;
+	private final Validator validator;
 
-	public StatsService(EndpointHitRepository repository) {
-		this.repository = repository;
+	public StatsService(HitStorage storage,
+	                    HitWriter writer,
+	                    ObjectProvider<HitBuffer> buffer,
+	                    StatsCache cache,
+	                    LiveCounters liveCounters,
+	                    Validator validator) {
+		this.storage = storage;
+		this.writer = writer;
+		this.buffer = buffer.getIfAvailable();
+		this.cache = cache;
+		this.liveCounters = liveCounters;
+		this.validator = validator;
 	}
 
-	@Transactional
-	public void saveHit(EndpointHitDto dto) {
-		EndpointHit hit = new EndpointHit();
-		hit.setApp(dto.getApp());
-		hit.setUri(dto.getUri());
-		hit.setIp(dto.getIp());
-		hit.setTimestamp(dto.getTimestamp());
-		repository.save(hit);
+	/**
+	 * Returns false when the write-behind buffer is full and configured to reject new hits.
+	 *
+	 * @throws IllegalArgumentException if the ip is not an IP address literal
+	 */
+	public boolean saveHit(EndpointHitDto dto) {
+		dto.setIp(IpAddresses.normalize(dto.getIp()));
+		if (buffer != null) {
+			return buffer.offer(dto);
+		}
+		writer.write(List.of(dto));
+		return true;
+	}
+
+	/**
+	 * Stores the hits unless a batch with the same key, which may be null, was stored before; the
+	 * result of a repeated batch is marked as a duplicate and counts nothing.
+	 */
+	public HitBatchResultDto saveHits(MappingIterator<EndpointHitDto> hits, String batchKey) throws IOException {
+		ValidHits validHits = new ValidHits(hits);
+		try {
+			long accepted = writer.write(() -> validHits, batchKey);
+			if (accepted < 0) {
+				return new HitBatchResultDto(0, 0, true);
+			}
+			return new HitBatchResultDto(accepted, validHits.rejected);
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
 	}
 
-	@Transactional(readOnly = true)
 	public List<ViewStatsDto> getStats(LocalDateTime start,
 	                                   LocalDateTime end,
 	                                   Collection<String> uris,
-	                                   boolean unique) {
-		if (unique) {
-			return repository.aggregateUnique(start, end, uris == null || uris.isEmpty() ? null : uris);
-		}
-		return repository.aggregateAll(start, end, uris == null || uris.isEmpty() ? null : uris);
+	                                   boolean unique,
+	                                   boolean approx) {
+		Collection<String> filter = uris == null || uris.isEmpty() ? null : uris;
+		return cache.get(start, end, filter, unique, approx, () -> storage.aggregate(start, end, filter, unique, approx));
 	}
-}
 
+	public List<ViewStatsDto> getTop(LocalDateTime start, LocalDateTime end, int k, boolean unique, boolean approx) {
+		return storage.top(start, end, k, unique, approx);
+	}
+
+	public List<TimeSeriesDto> getTimeSeries(LocalDateTime start,
+	                                         LocalDateTime end,
+	                                         Collection<String> uris,
+	                                         Granularity granularity,
+	                                         boolean unique,
+	                                         boolean approx) {
+		return storage.timeSeries(start, end, uris, granularity, unique, approx);
+	}
 
+	public List<LiveStatsDto> getLiveStats(Collection<String> uris) {
+		return liveCounters.get(uris);
+	}
+
+	public void streamStats(LocalDateTime start,
+	                        LocalDateTime end,
+	                        Collection<String> uris,
+	                        boolean unique,
+	                        Consumer<ViewStatsDto> sink) {
+		storage.stream(start, end, uris == null || uris.isEmpty() ? null : uris, unique, sink);
+	}
+
+	/**
+	 * Streams the parsed hits, skipping and counting the ones that fail validation.
+	 */
+	private class ValidHits implements Iterator<EndpointHitDto> {
+		private final MappingIterator<EndpointHitDto> source;
+		private EndpointHitDto next;
+		private long rejected;
+
+		ValidHits(MappingIterator<EndpointHitDto> source) {
+			this.source = source;
+		}
+
+		@Override
+		public boolean hasNext() {
+			try {
+				while (next == null && source.hasNextValue()) {
+					EndpointHitDto hit = source.nextValue();
+					if (hit != null && validator.validate(hit).isEmpty() && normalizeIp(hit)) {
+						next = hit;
+					} else {
+						rejected++;
+					}
+				}
+				return next != null;
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		private boolean normalizeIp(EndpointHitDto hit) {
+			try {
+				hit.setIp(IpAddresses.normalize(hit.getIp()));
+				return true;
+			} catch (IllegalArgumentException ex) {
+				return false;
+			}
+		}
+
+		@Override
+		public EndpointHitDto next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			EndpointHitDto hit = next;
+			next = null;
+			return hit;
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package ru.practicum.stats.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring over nodes numbered from 0. Each node owns {@code virtualNodes} points on the
+ * ring, and a key belongs to the node owning the first point at or after the key's hash, so adding a
+ * node moves only the keys that the new node takes over.
+ */
+public final class HashRing {
+	private final TreeMap<Long, Integer> points = new TreeMap<>();
+
+	public HashRing(int nodes, int virtualNodes) {
+		if (nodes < 1 || virtualNodes < 1) {
+			throw new IllegalArgumentException("A hash ring needs at least one node and one virtual node per node");
+		}
+		for (int node = 0; node < nodes; node++) {
+			for (int point = 0; point < virtualNodes; point++) {
+				points.putIfAbsent(Hashing.hash64("node-" + node + "#" + point), node);
+			}
+		}
+	}
+
+	public int nodeOf(String key) {
+		Map.Entry<Long, Integer> entry = points.ceilingEntry(Hashing.hash64(key));
+		return entry != null ? entry.getValue() : points.firstEntry().getValue();
+	}
+}
@@ -0,0 +1,174 @@
+package ru.practicum.stats.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HyperLogLog distinct-count sketch over 64-bit hashes with {@code 2^precision} one-byte registers.
+ * The relative standard error is about {@code 1.04 / sqrt(2^precision)}: 3.25% at precision 10,
+ * 1.63% at 12, 0.81% at 14 and 0.41% at 16. Small cardinalities are practically exact: the error
+ * there comes only from two addresses landing in the same register.
+ *
+ * <p>Sketches are mergeable: merging the sketches of two buckets gives the sketch of their union.
+ * Sketches of different precision are merged by folding the finer one down to the coarser one.
+ */
+public class HyperLogLog {
+	public static final int MIN_PRECISION = 4;
+	public static final int MAX_PRECISION = 18;
+	private static final byte DENSE = 0;
+	private static final byte SPARSE = 1;
+	private int precision;
+	private byte[] registers;
+
+	public HyperLogLog(int precision) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("HyperLogLog precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	public void add(long hash) {
+		int index = (int) (hash >>> (64 - precision));
+		long remaining = hash << precision;
+		int rank = remaining == 0 ? 64 - precision + 1 : Long.numberOfLeadingZeros(remaining) + 1;
+		if (rank > registers[index]) {
+			registers[index] = (byte) rank;
+		}
+	}
+
+	public void merge(HyperLogLog other) {
+		HyperLogLog source = other;
+		if (other.precision > precision) {
+			source = other.copy();
+			source.fold(precision);
+		} else if (other.precision < precision) {
+			fold(other.precision);
+		}
+		for (int i = 0; i < registers.length; i++) {
+			if (source.registers[i] > registers[i]) {
+				registers[i] = source.registers[i];
+			}
+		}
+	}
+
+	/**
+	 * Uses Ertl's improved estimator ("New cardinality estimation algorithms for HyperLogLog sketches",
+	 * 2017), which stays unbiased across the whole range without the empirical bias tables of HLL++.
+	 */
+	public long estimate() {
+		int m = registers.length;
+		int q = 64 - precision;
+		int[] histogram = new int[q + 2];
+		for (byte register : registers) {
+			histogram[register]++;
+		}
+		double z = m * tau(1 - (double) histogram[q + 1] / m);
+		for (int k = q; k >= 1; k--) {
+			z = 0.5 * (z + histogram[k]);
+		}
+		z += m * sigma((double) histogram[0] / m);
+		return Math.round((double) m * m / (2 * Math.log(2) * z));
+	}
+
+	/**
+	 * Serializes the sketch, storing only the non-empty registers while that is the smaller form.
+	 */
+	public byte[] toBytes() {
+		int nonEmpty = 0;
+		for (byte register : registers) {
+			if (register != 0) {
+				nonEmpty++;
+			}
+		}
+		if (nonEmpty * 4 < registers.length) {
+			ByteBuffer buffer = ByteBuffer.allocate(2 + nonEmpty * 4);
+			buffer.put((byte) precision).put(SPARSE);
+			for (int i = 0; i < registers.length; i++) {
+				if (registers[i] != 0) {
+					buffer.putInt(i << 8 | registers[i]);
+				}
+			}
+			return buffer.array();
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(2 + registers.length);
+		buffer.put((byte) precision).put(DENSE).put(registers);
+		return buffer.array();
+	}
+
+	public static HyperLogLog fromBytes(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		HyperLogLog sketch = new HyperLogLog(buffer.get());
+		if (buffer.get() == SPARSE) {
+			while (buffer.hasRemaining()) {
+				int entry = buffer.getInt();
+				sketch.registers[entry >>> 8] = (byte) (entry & 0xff);
+			}
+		} else {
+			buffer.get(sketch.registers);
+		}
+		return sketch;
+	}
+
+	private static double sigma(double x) {
+		if (x == 1) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double value = x;
+		double power = 1;
+		double sum = value;
+		double previous;
+		do {
+			value *= value;
+			previous = sum;
+			sum += value * power;
+			power += power;
+		} while (Double.compare(sum, previous) != 0);
+		return sum;
+	}
+
+	private static double tau(double x) {
+		if (x == 0 || x == 1) {
+			return 0;
+		}
+		double value = x;
+		double power = 1;
+		double sum = 1 - value;
+		double previous;
+		do {
+			value = Math.sqrt(value);
+			previous = sum;
+			power *= 0.5;
+			sum -= Math.pow(1 - value, 2) * power;
+		} while (Double.compare(sum, previous) != 0);
+		return sum / 3;
+	}
+
+	private HyperLogLog copy() {
+		HyperLogLog copy = new HyperLogLog(precision);
+		System.arraycopy(registers, 0, copy.registers, 0, registers.length);
+		return copy;
+	}
+
+	private void fold(int target) {
+		int dropped = precision - target;
+		byte[] folded = new byte[1 << target];
+		for (int i = 0; i < registers.length; i++) {
+			if (registers[i] == 0) {
+				continue;
+			}
+			// The low index bits that no longer select a register become the leading bits of the rank.
+			int low = i & ((1 << dropped) - 1);
+			int rank = low != 0 ? Integer.numberOfLeadingZeros(low) - (32 - dropped) + 1 : registers[i] + dropped;
+			int index = i >>> dropped;
+			if (rank > folded[index]) {
+				folded[index] = (byte) rank;
+			}
+		}
+		precision = target;
+		registers = folded;
+	}
+}
@@ -0,0 +1,81 @@
+package ru.practicum.stats.util;
+
+/**
+ * Open-addressing set of primitive longs with linear probing, for counting distinct IP hashes
+ * without boxing. Zero marks an empty slot and is tracked separately. Not thread-safe.
+ */
+public class LongHashSet {
+	private static final int MIN_CAPACITY = 16;
+	private long[] slots;
+	private boolean containsZero;
+	private int size;
+
+	public LongHashSet() {
+		slots = new long[MIN_CAPACITY];
+	}
+
+	/**
+	 * Returns true if the value was not in the set yet.
+	 */
+	public boolean add(long value) {
+		if (value == 0) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			size++;
+			return true;
+		}
+		int mask = slots.length - 1;
+		for (int slot = slot(value, mask); ; slot = (slot + 1) & mask) {
+			if (slots[slot] == value) {
+				return false;
+			}
+			if (slots[slot] == 0) {
+				slots[slot] = value;
+				break;
+			}
+		}
+		// Keep the load factor at or below 1/2 so probe sequences stay short.
+		if (++size * 2 > slots.length) {
+			resize();
+		}
+		return true;
+	}
+
+	public boolean contains(long value) {
+		if (value == 0) {
+			return containsZero;
+		}
+		int mask = slots.length - 1;
+		for (int slot = slot(value, mask); slots[slot] != 0; slot = (slot + 1) & mask) {
+			if (slots[slot] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void resize() {
+		long[] old = slots;
+		slots = new long[old.length * 2];
+		int mask = slots.length - 1;
+		for (long value : old) {
+			if (value != 0) {
+				int slot = slot(value, mask);
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = value;
+			}
+		}
+	}
+
+	private static int slot(long value, int mask) {
+		return (int) Hashing.mix(value) & mask;
+	}
+}
@@ -0,0 +1,81 @@
+package ru.practicum.stats.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer, single-consumer ring buffer. Every slot carries a sequence
+ * number, so producers claim slots with a single CAS on the tail and never block each other.
+ */
+public class RingBuffer<E> {
+	private final int mask;
+	private final AtomicReferenceArray<E> slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong head = new AtomicLong();
+
+	public RingBuffer(int capacity) {
+		if (capacity < 2) {
+			throw new IllegalArgumentException("Ring buffer capacity must be at least 2");
+		}
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = size - 1;
+		this.slots = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	public boolean offer(E element) {
+		long position = tail.get();
+		while (true) {
+			int index = (int) (position & mask);
+			long gap = sequences.get(index) - position;
+			if (gap == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					slots.set(index, element);
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (gap < 0) {
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Moves up to {@code max} elements into {@code target}. Must only be called from the consumer thread.
+	 */
+	public int drainTo(Collection<? super E> target, int max) {
+		long position = head.get();
+		int drained = 0;
+		while (drained < max) {
+			int index = (int) (position & mask);
+			if (sequences.get(index) != position + 1) {
+				break;
+			}
+			target.add(slots.get(index));
+			slots.set(index, null);
+			sequences.set(index, position + mask + 1);
+			position++;
+			drained++;
+		}
+		head.set(position);
+		return drained;
+	}
+
+	public int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, capacity()));
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+}
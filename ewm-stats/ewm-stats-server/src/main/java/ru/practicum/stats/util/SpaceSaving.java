@@ -0,0 +1,143 @@
+package ru.practicum.stats.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy-hitter summary (Metwally et al., "Efficient computation of frequent and top-k
+ * elements in data streams", 2005) over long keys, keeping at most {@code capacity} counters.
+ *
+ * <p>Every kept count is an upper bound and {@code count - error} a lower bound of the true count.
+ * A key that is not kept occurred at most {@link #getFloor()} times, and any key occurring more than
+ * {@code total / capacity} times is kept. Summaries are mergeable: merging adds the counts and charges
+ * keys missing from one side with that side's floor, which preserves both bounds.
+ *
+ * <p>Counters are evicted in bulk once twice the capacity are held, instead of on every new key.
+ */
+public class SpaceSaving {
+	private static final Comparator<Counter> COUNT_DESC = Comparator.comparingLong((Counter counter) -> counter.count).reversed();
+	private final int capacity;
+	private final Map<Long, Counter> counters = new HashMap<>();
+	private long floor;
+
+	public SpaceSaving(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getFloor() {
+		return floor;
+	}
+
+	public void add(long key, long count) {
+		Counter counter = counters.get(key);
+		if (counter != null) {
+			counter.count += count;
+			return;
+		}
+		// A key not kept may already have occurred up to floor times.
+		counters.put(key, new Counter(key, floor + count, floor));
+		if (counters.size() >= 2 * capacity) {
+			compact();
+		}
+	}
+
+	public void merge(SpaceSaving other) {
+		long ownFloor = floor;
+		for (Counter counter : counters.values()) {
+			if (!other.counters.containsKey(counter.key)) {
+				counter.count += other.floor;
+				counter.error += other.floor;
+			}
+		}
+		for (Counter counter : other.counters.values()) {
+			Counter existing = counters.get(counter.key);
+			if (existing == null) {
+				counters.put(counter.key, new Counter(counter.key, counter.count + ownFloor, counter.error + ownFloor));
+			} else {
+				existing.count += counter.count;
+				existing.error += counter.error;
+			}
+		}
+		floor = ownFloor + other.floor;
+		compact();
+	}
+
+	/**
+	 * Returns up to {@code k} counters with the highest counts, highest first.
+	 */
+	public List<Counter> top(int k) {
+		compact();
+		List<Counter> sorted = new ArrayList<>(counters.values());
+		sorted.sort(COUNT_DESC);
+		return sorted.subList(0, Math.min(k, sorted.size()));
+	}
+
+	public byte[] toBytes() {
+		compact();
+		ByteBuffer buffer = ByteBuffer.allocate(16 + counters.size() * 24);
+		buffer.putInt(capacity).putLong(floor).putInt(counters.size());
+		for (Counter counter : counters.values()) {
+			buffer.putLong(counter.key).putLong(counter.count).putLong(counter.error);
+		}
+		return buffer.array();
+	}
+
+	public static SpaceSaving fromBytes(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		SpaceSaving summary = new SpaceSaving(buffer.getInt());
+		summary.floor = buffer.getLong();
+		int size = buffer.getInt();
+		for (int i = 0; i < size; i++) {
+			Counter counter = new Counter(buffer.getLong(), buffer.getLong(), buffer.getLong());
+			summary.counters.put(counter.key, counter);
+		}
+		return summary;
+	}
+
+	private void compact() {
+		if (counters.size() <= capacity) {
+			return;
+		}
+		List<Counter> sorted = new ArrayList<>(counters.values());
+		sorted.sort(COUNT_DESC);
+		for (Counter evicted : sorted.subList(capacity, sorted.size())) {
+			counters.remove(evicted.key);
+		}
+		floor = Math.max(floor, sorted.get(capacity).count);
+	}
+
+	public static final class Counter {
+		private final long key;
+		private long count;
+		private long error;
+
+		private Counter(long key, long count, long error) {
+			this.key = key;
+			this.count = count;
+			this.error = error;
+		}
+
+		public long getKey() {
+			return key;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getError() {
+			return error;
+		}
+	}
+}
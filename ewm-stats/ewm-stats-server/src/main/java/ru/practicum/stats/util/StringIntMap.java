@@ -0,0 +1,95 @@
+package ru.practicum.stats.util;
+
+/**
+ * Open-addressing hash map from strings to non-negative ints with linear probing. Keys, values and
+ * key hashes are kept in parallel arrays, so a lookup allocates nothing and compares strings only
+ * when the full hashes match. Not thread-safe.
+ */
+public class StringIntMap {
+	public static final int MISSING = -1;
+	private static final int MIN_CAPACITY = 16;
+	private String[] keys;
+	private int[] hashes;
+	private int[] values;
+	private int size;
+
+	public StringIntMap() {
+		this(MIN_CAPACITY);
+	}
+
+	public StringIntMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1)) << 1;
+		allocate(capacity);
+	}
+
+	/**
+	 * Returns the value mapped to the key, or {@link #MISSING}.
+	 */
+	public int get(String key) {
+		int hash = hash(key);
+		int mask = keys.length - 1;
+		for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && keys[slot].equals(key)) {
+				return values[slot];
+			}
+		}
+		return MISSING;
+	}
+
+	public void put(String key, int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Value must not be negative: " + value);
+		}
+		int hash = hash(key);
+		int mask = keys.length - 1;
+		int slot = hash & mask;
+		for (; keys[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && keys[slot].equals(key)) {
+				values[slot] = value;
+				return;
+			}
+		}
+		keys[slot] = key;
+		hashes[slot] = hash;
+		values[slot] = value;
+		// Keep the load factor at or below 1/2 so probe sequences stay short.
+		if (++size * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void resize(int capacity) {
+		String[] oldKeys = keys;
+		int[] oldHashes = hashes;
+		int[] oldValues = values;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int slot = oldHashes[i] & mask;
+				while (keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				hashes[slot] = oldHashes[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new String[capacity];
+		hashes = new int[capacity];
+		values = new int[capacity];
+	}
+
+	private static int hash(String key) {
+		// String.hashCode clusters in the low bits for keys sharing a prefix, like /events/{id}.
+		int hash = key.hashCode() * 0x9e3779b9;
+		return hash ^ (hash >>> 16);
+	}
+}
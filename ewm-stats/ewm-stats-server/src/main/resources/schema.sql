@@ -0,0 +1,214 @@
+-- App names and uris are interned into these dictionaries; hits and rollups store only the ids.
+CREATE TABLE IF NOT EXISTS stats_apps (
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    app VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_stats_apps PRIMARY KEY (id),
+    CONSTRAINT uq_stats_apps_app UNIQUE (app)
+);
+
+CREATE TABLE IF NOT EXISTS stats_uris (
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    uri VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_stats_uris PRIMARY KEY (id),
+    CONSTRAINT uq_stats_uris_uri UNIQUE (uri)
+);
+
+-- Raw hits are range-partitioned by month; HitPartitionManager creates the monthly partitions and
+-- drops expired ones. Rows outside every monthly partition land in endpoint_hits_default.
+CREATE TABLE IF NOT EXISTS endpoint_hits (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    app_id INT,
+    uri_id INT,
+    ip INET,
+    timestamp TIMESTAMP NOT NULL,
+    hits INT NOT NULL DEFAULT 1,
+    CONSTRAINT pk_endpoint_hits PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+CREATE INDEX IF NOT EXISTS idx_timestamp ON endpoint_hits (timestamp);
+
+CREATE TABLE IF NOT EXISTS hit_rollup_minute (
+    bucket TIMESTAMP NOT NULL,
+    app_id INT NOT NULL,
+    uri_id INT NOT NULL,
+    hits BIGINT NOT NULL,
+    sketch BYTEA,
+    CONSTRAINT pk_hit_rollup_minute PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS hit_rollup_hour (
+    bucket TIMESTAMP NOT NULL,
+    app_id INT NOT NULL,
+    uri_id INT NOT NULL,
+    hits BIGINT NOT NULL,
+    sketch BYTEA,
+    CONSTRAINT pk_hit_rollup_hour PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS hit_rollup_day (
+    bucket TIMESTAMP NOT NULL,
+    app_id INT NOT NULL,
+    uri_id INT NOT NULL,
+    hits BIGINT NOT NULL,
+    sketch BYTEA,
+    CONSTRAINT pk_hit_rollup_day PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+-- Space-Saving summaries of the most hit endpoints per bucket, for /stats/top.
+CREATE TABLE IF NOT EXISTS hit_top_hour (
+    bucket TIMESTAMP NOT NULL,
+    summary BYTEA NOT NULL,
+    CONSTRAINT pk_hit_top_hour PRIMARY KEY (bucket)
+);
+
+CREATE TABLE IF NOT EXISTS hit_top_day (
+    bucket TIMESTAMP NOT NULL,
+    summary BYTEA NOT NULL,
+    CONSTRAINT pk_hit_top_day PRIMARY KEY (bucket)
+);
+
+-- Summaries of single write batches, appended without locking and folded into the tables above in
+-- the background; /stats/top reads both.
+CREATE TABLE IF NOT EXISTS hit_top_hour_parts (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    bucket TIMESTAMP NOT NULL,
+    summary BYTEA NOT NULL,
+    CONSTRAINT pk_hit_top_hour_parts PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_top_hour_parts_bucket ON hit_top_hour_parts (bucket);
+
+CREATE TABLE IF NOT EXISTS hit_top_day_parts (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    bucket TIMESTAMP NOT NULL,
+    summary BYTEA NOT NULL,
+    CONSTRAINT pk_hit_top_day_parts PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_top_day_parts_bucket ON hit_top_day_parts (bucket);
+
+-- Idempotency keys of stored hit batches; a batch sent again with the same key is not stored twice.
+CREATE TABLE IF NOT EXISTS stats_ingest_batches (
+    batch_key VARCHAR(255) NOT NULL,
+    created TIMESTAMP NOT NULL,
+    CONSTRAINT pk_stats_ingest_batches PRIMARY KEY (batch_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_stats_ingest_batches_created ON stats_ingest_batches (created);
+
+-- Raw hits and minute rollups before compacted_before have been deleted by HitCompactor. Readers
+-- already answer everything before announced_before from hour and day rollups, and a later run
+-- deletes only what was announced on an earlier one.
+CREATE TABLE IF NOT EXISTS stats_compaction (
+    id INT NOT NULL,
+    announced_before TIMESTAMP,
+    compacted_before TIMESTAMP,
+    CONSTRAINT pk_stats_compaction PRIMARY KEY (id),
+    CONSTRAINT ck_stats_compaction_single_row CHECK (id = 1)
+);
+
+INSERT INTO stats_compaction (id) VALUES (1) ON CONFLICT DO NOTHING;
+
+-- Tables created before the dictionaries held the app and uri strings in every row; move them to ids once.
+DO '
+DECLARE
+    t TEXT;
+BEGIN
+    FOREACH t IN ARRAY ARRAY[''endpoint_hits'', ''hit_rollup_minute'', ''hit_rollup_hour'', ''hit_rollup_day''] LOOP
+        CONTINUE WHEN NOT EXISTS (
+            SELECT 1 FROM information_schema.columns
+            WHERE table_schema = current_schema() AND table_name = t AND column_name = ''uri'');
+        EXECUTE format(''INSERT INTO stats_apps (app) SELECT DISTINCT app FROM %I WHERE app IS NOT NULL ORDER BY 1 ON CONFLICT DO NOTHING'', t);
+        EXECUTE format(''INSERT INTO stats_uris (uri) SELECT DISTINCT uri FROM %I WHERE uri IS NOT NULL ORDER BY 1 ON CONFLICT DO NOTHING'', t);
+        EXECUTE format(''ALTER TABLE %I ADD COLUMN IF NOT EXISTS app_id INT, ADD COLUMN IF NOT EXISTS uri_id INT'', t);
+        EXECUTE format(''UPDATE %I h SET app_id = a.id, uri_id = u.id FROM stats_apps a, stats_uris u WHERE a.app = h.app AND u.uri = h.uri'', t);
+        EXECUTE format(''ALTER TABLE %I DROP COLUMN app CASCADE, DROP COLUMN uri CASCADE'', t);
+        IF t <> ''endpoint_hits'' THEN
+            EXECUTE format(''ALTER TABLE %1$I ALTER COLUMN app_id SET NOT NULL, ALTER COLUMN uri_id SET NOT NULL, ''
+                || ''ADD CONSTRAINT pk_%1$s PRIMARY KEY (bucket, app_id, uri_id)'', t);
+        END IF;
+    END LOOP;
+END';
+
+-- Older tables stored ip as text; values that are not IP addresses become NULL.
+CREATE OR REPLACE FUNCTION pg_temp.stats_try_inet(value TEXT) RETURNS INET LANGUAGE plpgsql IMMUTABLE AS '
+BEGIN
+    RETURN value::inet;
+EXCEPTION WHEN invalid_text_representation THEN
+    RETURN NULL;
+END';
+
+DO '
+BEGIN
+    IF EXISTS (
+        SELECT 1 FROM information_schema.columns
+        WHERE table_schema = current_schema() AND table_name = ''endpoint_hits'' AND column_name = ''ip'' AND data_type <> ''inet'') THEN
+        ALTER TABLE endpoint_hits ALTER COLUMN ip TYPE INET USING pg_temp.stats_try_inet(ip);
+    END IF;
+END';
+
+-- A NULL sketch marks a bucket whose distinct IPs are unknown; unique counts fall back to raw hits for it.
+ALTER TABLE hit_rollup_minute ADD COLUMN IF NOT EXISTS sketch BYTEA;
+ALTER TABLE hit_rollup_hour ADD COLUMN IF NOT EXISTS sketch BYTEA;
+ALTER TABLE hit_rollup_day ADD COLUMN IF NOT EXISTS sketch BYTEA;
+
+-- Identical hits arriving together are stored as one row counting them all.
+ALTER TABLE endpoint_hits ADD COLUMN IF NOT EXISTS hits INT NOT NULL DEFAULT 1;
+
+-- endpoint_hits created before partitioning is a plain table; move its rows into a partitioned one
+-- once. They land in the default partition, which HitPartitionManager splits into monthly ones.
+DO '
+DECLARE
+    r RECORD;
+    next_id BIGINT;
+BEGIN
+    IF NOT EXISTS (
+        SELECT 1 FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+        WHERE n.nspname = current_schema() AND c.relname = ''endpoint_hits'' AND c.relkind = ''r'') THEN
+        RETURN;
+    END IF;
+    ALTER TABLE endpoint_hits RENAME TO endpoint_hits_unpartitioned;
+    -- Free the constraint and index names for the new table.
+    FOR r IN SELECT conname FROM pg_constraint WHERE conrelid = ''endpoint_hits_unpartitioned''::regclass AND contype IN (''p'', ''u'') LOOP
+        EXECUTE format(''ALTER TABLE endpoint_hits_unpartitioned DROP CONSTRAINT %I'', r.conname);
+    END LOOP;
+    FOR r IN SELECT indexrelid::regclass AS name FROM pg_index WHERE indrelid = ''endpoint_hits_unpartitioned''::regclass LOOP
+        EXECUTE format(''DROP INDEX %s'', r.name);
+    END LOOP;
+    CREATE TABLE endpoint_hits (
+        id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+        app_id INT,
+        uri_id INT,
+        ip INET,
+        timestamp TIMESTAMP NOT NULL,
+        hits INT NOT NULL DEFAULT 1,
+        CONSTRAINT pk_endpoint_hits PRIMARY KEY (id, timestamp)
+    ) PARTITION BY RANGE (timestamp);
+    CREATE INDEX idx_timestamp ON endpoint_hits (timestamp);
+    CREATE TABLE endpoint_hits_default PARTITION OF endpoint_hits DEFAULT;
+    -- Hits without a timestamp fall in no range and cannot be kept.
+    INSERT INTO endpoint_hits (id, app_id, uri_id, ip, timestamp, hits)
+    SELECT id, app_id, uri_id, ip, timestamp, hits FROM endpoint_hits_unpartitioned WHERE timestamp IS NOT NULL;
+    SELECT COALESCE(MAX(id), 0) + 1 INTO next_id FROM endpoint_hits;
+    EXECUTE format(''ALTER TABLE endpoint_hits ALTER COLUMN id RESTART WITH %s'', next_id);
+    DROP TABLE endpoint_hits_unpartitioned;
+END';
+
+-- Backfill rollups from hits recorded before the rollup tables existed; a no-op once they hold data.
+INSERT INTO hit_rollup_minute (bucket, app_id, uri_id, hits)
+SELECT date_trunc('minute', timestamp), app_id, uri_id, SUM(hits)
+FROM endpoint_hits
+WHERE NOT EXISTS (SELECT 1 FROM hit_rollup_minute)
+GROUP BY 1, 2, 3;
+
+INSERT INTO hit_rollup_hour (bucket, app_id, uri_id, hits)
+SELECT date_trunc('hour', timestamp), app_id, uri_id, SUM(hits)
+FROM endpoint_hits
+WHERE NOT EXISTS (SELECT 1 FROM hit_rollup_hour)
+GROUP BY 1, 2, 3;
+
+INSERT INTO hit_rollup_day (bucket, app_id, uri_id, hits)
+SELECT date_trunc('day', timestamp), app_id, uri_id, SUM(hits)
+FROM endpoint_hits
+WHERE NOT EXISTS (SELECT 1 FROM hit_rollup_day)
+GROUP BY 1, 2, 3;
@@ -0,0 +1,125 @@
+package ru.practicum.stats.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class HyperLogLogTest {
+
+	@ParameterizedTest
+	@CsvSource({
+			"10, 14",
+			"1000, 14",
+			"20000, 14",
+			"100000, 14",
+			"1000000, 14",
+			"100000, 10",
+			"100000, 16"
+	})
+	void estimatesWithinFourStandardErrors(int cardinality, int precision) {
+		HyperLogLog sketch = sketchOf(0, cardinality, precision);
+
+		double standardError = 1.04 / Math.sqrt(1 << precision);
+		assertThat((double) sketch.estimate()).isCloseTo(cardinality, within(Math.max(1, 4 * standardError * cardinality)));
+	}
+
+	@Test
+	void countsSmallCardinalitiesExactly() {
+		for (int cardinality = 0; cardinality <= 50; cardinality++) {
+			assertThat(sketchOf(0, cardinality, 14).estimate()).isEqualTo(cardinality);
+		}
+	}
+
+	@Test
+	void ignoresRepeatedValues() {
+		HyperLogLog sketch = sketchOf(0, 1000, 14);
+		long estimate = sketch.estimate();
+		for (int i = 0; i < 1000; i++) {
+			sketch.add(hash(i));
+		}
+
+		assertThat(sketch.estimate()).isEqualTo(estimate);
+	}
+
+	@Test
+	void roundTripsSparseSketch() {
+		HyperLogLog sketch = sketchOf(0, 100, 14);
+
+		byte[] bytes = sketch.toBytes();
+		HyperLogLog copy = HyperLogLog.fromBytes(bytes);
+
+		assertThat(bytes.length).isLessThan(1 << 14);
+		assertThat(copy.getPrecision()).isEqualTo(14);
+		assertThat(copy.estimate()).isEqualTo(sketch.estimate());
+		assertThat(copy.toBytes()).isEqualTo(bytes);
+	}
+
+	@Test
+	void roundTripsDenseSketch() {
+		HyperLogLog sketch = sketchOf(0, 100_000, 14);
+
+		byte[] bytes = sketch.toBytes();
+		HyperLogLog copy = HyperLogLog.fromBytes(bytes);
+
+		assertThat(bytes).hasSize(2 + (1 << 14));
+		assertThat(copy.getPrecision()).isEqualTo(14);
+		assertThat(copy.estimate()).isEqualTo(sketch.estimate());
+		assertThat(copy.toBytes()).isEqualTo(bytes);
+	}
+
+	@Test
+	void roundTripsEmptySketch() {
+		HyperLogLog copy = HyperLogLog.fromBytes(new HyperLogLog(12).toBytes());
+
+		assertThat(copy.getPrecision()).isEqualTo(12);
+		assertThat(copy.estimate()).isZero();
+	}
+
+	@Test
+	void mergeEqualsSketchOfUnion() {
+		HyperLogLog left = sketchOf(0, 60_000, 14);
+		HyperLogLog right = sketchOf(40_000, 100_000, 14);
+
+		left.merge(right);
+
+		assertThat(left.toBytes()).isEqualTo(sketchOf(0, 100_000, 14).toBytes());
+	}
+
+	@Test
+	void mergeOfDifferentPrecisionsEqualsCoarserSketchOfUnion() {
+		HyperLogLog fine = sketchOf(0, 60_000, 16);
+		HyperLogLog coarse = sketchOf(40_000, 100_000, 12);
+
+		fine.merge(coarse);
+
+		assertThat(fine.getPrecision()).isEqualTo(12);
+		assertThat(fine.toBytes()).isEqualTo(sketchOf(0, 100_000, 12).toBytes());
+	}
+
+	@Test
+	void mergeIntoFinerSketchKeepsOtherUnchanged() {
+		HyperLogLog coarse = sketchOf(0, 60_000, 12);
+		HyperLogLog fine = sketchOf(40_000, 100_000, 16);
+		byte[] fineBytes = fine.toBytes();
+
+		coarse.merge(fine);
+
+		assertThat(coarse.toBytes()).isEqualTo(sketchOf(0, 100_000, 12).toBytes());
+		assertThat(fine.toBytes()).isEqualTo(fineBytes);
+	}
+
+	private static HyperLogLog sketchOf(int from, int to, int precision) {
+		HyperLogLog sketch = new HyperLogLog(precision);
+		for (int i = from; i < to; i++) {
+			sketch.add(hash(i));
+		}
+		return sketch;
+	}
+
+	private static long hash(int i) {
+		return Hashing.hash64("10." + (i >>> 16) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff));
+	}
+}
@@ -0,0 +1,94 @@
+package ru.practicum.stats.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class RingBufferTest {
+
+	@Test
+	void roundsCapacityUpToPowerOfTwo() {
+		assertThat(new RingBuffer<Integer>(2).capacity()).isEqualTo(2);
+		assertThat(new RingBuffer<Integer>(1000).capacity()).isEqualTo(1024);
+		assertThat(new RingBuffer<Integer>(1024).capacity()).isEqualTo(1024);
+	}
+
+	@Test
+	void refusesOffersWhileFullAndAcceptsAfterDrain() {
+		RingBuffer<Integer> buffer = new RingBuffer<>(4);
+		for (int i = 0; i < 4; i++) {
+			assertThat(buffer.offer(i)).isTrue();
+		}
+
+		assertThat(buffer.offer(4)).isFalse();
+		assertThat(buffer.size()).isEqualTo(4);
+
+		List<Integer> drained = new ArrayList<>();
+		assertThat(buffer.drainTo(drained, 3)).isEqualTo(3);
+		assertThat(buffer.offer(4)).isTrue();
+		assertThat(buffer.drainTo(drained, 10)).isEqualTo(2);
+		assertThat(drained).containsExactly(0, 1, 2, 3, 4);
+		assertThat(buffer.size()).isZero();
+	}
+
+	@Test
+	@Timeout(60)
+	void neitherLosesNorDuplicatesElementsOfConcurrentProducers() throws Exception {
+		int producers = 8;
+		int perProducer = 50_000;
+		RingBuffer<Long> buffer = new RingBuffer<>(1024);
+		ExecutorService executor = Executors.newFixedThreadPool(producers);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			long producer = p;
+			futures.add(executor.submit(() -> {
+				start.await();
+				for (long i = 0; i < perProducer; i++) {
+					while (!buffer.offer(producer << 32 | i)) {
+						Thread.onSpinWait();
+					}
+				}
+				return null;
+			}));
+		}
+
+		start.countDown();
+		long[] next = new long[producers];
+		List<Long> batch = new ArrayList<>();
+		long received = 0;
+		while (received < (long) producers * perProducer) {
+			batch.clear();
+			if (buffer.drainTo(batch, 256) == 0) {
+				Thread.onSpinWait();
+				continue;
+			}
+			for (long element : batch) {
+				int producer = (int) (element >>> 32);
+				// Each producer's elements arrive once each and in the order it offered them.
+				if ((element & 0xffffffffL) != next[producer]++) {
+					fail("Producer " + producer + " element " + (element & 0xffffffffL) + " arrived instead of " + (next[producer] - 1));
+				}
+			}
+			received += batch.size();
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(next).containsOnly(perProducer);
+		assertThat(buffer.drainTo(batch, 1)).isZero();
+		assertThat(buffer.size()).isZero();
+	}
+}
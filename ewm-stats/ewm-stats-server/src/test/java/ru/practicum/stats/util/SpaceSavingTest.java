@@ -0,0 +1,123 @@
+package ru.practicum.stats.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class SpaceSavingTest {
+	private static final int CAPACITY = 20;
+
+	@ParameterizedTest
+	@ValueSource(longs = {1, 2, 3, 4, 5, 6, 7, 8})
+	void keepsFrequentKeysThroughMerge(long seed) {
+		Random random = new Random(seed);
+		Map<Long, Long> counts = new HashMap<>();
+		SpaceSaving merged = new SpaceSaving(CAPACITY);
+		for (int part = 0; part < 4; part++) {
+			SpaceSaving summary = new SpaceSaving(CAPACITY);
+			for (int i = 0; i < 5_000; i++) {
+				// Key 0 is frequent throughout, key 5 only in the first part, a few keys per part are
+				// frequent only locally, and the rest is a long tail of rare keys.
+				int draw = random.nextInt(16);
+				long key;
+				if (draw == 0) {
+					key = 0;
+				} else if (part == 0 && draw < 8) {
+					key = 5;
+				} else if (draw < 4) {
+					key = part * 10 + 11 + random.nextInt(3);
+				} else {
+					key = 1_000 + random.nextInt(2_000);
+				}
+				summary.add(key, 1);
+				counts.merge(key, 1L, Long::sum);
+			}
+			merged.merge(summary);
+		}
+		long total = counts.values().stream().mapToLong(Long::longValue).sum();
+		assertThat(counts.get(0L)).isGreaterThan(total / CAPACITY);
+		assertThat(counts.get(5L)).isGreaterThan(total / CAPACITY);
+
+		Map<Long, SpaceSaving.Counter> kept = merged.top(CAPACITY).stream()
+				.collect(Collectors.toMap(SpaceSaving.Counter::getKey, counter -> counter));
+		counts.forEach((key, count) -> {
+			if (count > total / CAPACITY) {
+				assertThat(kept).containsKey(key);
+			}
+			SpaceSaving.Counter counter = kept.get(key);
+			if (counter == null) {
+				assertThat(count).isLessThanOrEqualTo(merged.getFloor());
+			} else {
+				assertThat(counter.getCount()).isGreaterThanOrEqualTo(count);
+				assertThat(counter.getCount() - counter.getError()).isLessThanOrEqualTo(count);
+			}
+		});
+	}
+
+	@Test
+	void keepsKeyFrequentOnlyInOnePart() {
+		SpaceSaving left = new SpaceSaving(CAPACITY);
+		for (long key = 0; key < 10_000; key++) {
+			left.add(key, 1);
+		}
+		SpaceSaving right = new SpaceSaving(CAPACITY);
+		right.add(-1, 1_000);
+		for (long key = 10_000; key < 11_000; key++) {
+			right.add(key, 1);
+		}
+
+		left.merge(right);
+
+		assertThat(left.top(1)).singleElement()
+				.satisfies(counter -> assertThat(counter.getKey()).isEqualTo(-1))
+				.satisfies(counter -> assertThat(counter.getCount()).isGreaterThanOrEqualTo(1_000));
+	}
+
+	@Test
+	void countsExactlyWithinCapacity() {
+		SpaceSaving summary = new SpaceSaving(CAPACITY);
+		for (long key = 0; key < CAPACITY; key++) {
+			summary.add(key, key + 1);
+		}
+
+		List<SpaceSaving.Counter> top = summary.top(3);
+
+		assertThat(summary.getFloor()).isZero();
+		assertThat(top).extracting(SpaceSaving.Counter::getKey).containsExactly(19L, 18L, 17L);
+		assertThat(top).extracting(SpaceSaving.Counter::getCount).containsExactly(20L, 19L, 18L);
+		assertThat(top).extracting(SpaceSaving.Counter::getError).containsOnly(0L);
+	}
+
+	@Test
+	void roundTripsThroughBytes() {
+		Random random = new Random(42);
+		SpaceSaving summary = new SpaceSaving(CAPACITY);
+		for (int i = 0; i < 10_000; i++) {
+			summary.add(random.nextInt(100) * random.nextInt(100), 1 + random.nextInt(3));
+		}
+
+		SpaceSaving copy = SpaceSaving.fromBytes(summary.toBytes());
+
+		assertThat(copy.getCapacity()).isEqualTo(CAPACITY);
+		assertThat(copy.getFloor()).isEqualTo(summary.getFloor()).isPositive();
+		assertThat(copy.top(CAPACITY)).usingRecursiveFieldByFieldElementComparator()
+				.containsExactlyInAnyOrderElementsOf(summary.top(CAPACITY));
+		assertThat(copy.toBytes()).hasSameSizeAs(summary.toBytes());
+	}
+
+	@Test
+	void roundTripsEmptySummary() {
+		SpaceSaving copy = SpaceSaving.fromBytes(new SpaceSaving(5).toBytes());
+
+		assertThat(copy.getCapacity()).isEqualTo(5);
+		assertThat(copy.getFloor()).isZero();
+		assertThat(copy.top(5)).isEmpty();
+	}
+}